@@ -1,5 +1,9 @@
 package enigma;
 
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Lisa Sam Wang
@@ -10,10 +14,21 @@ class Alphabet {
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         _chars = chars;
-        _charArray = new char[chars.length()];
-        for (int i = 0; i < chars.length(); i++) {
-            _charArray[i] = _chars.charAt(i);
+        _charArray = chars.toCharArray();
+        int max = 0;
+        for (char c : _charArray) {
+            max = Math.max(max, c);
+        }
+        if (max < DIRECT_LIMIT || max < DENSITY * _charArray.length) {
+            buildDirect(max);
+        } else {
+            buildHashed();
         }
+        boolean bytes = _charArray.length == BYTE_VALUES;
+        for (int i = 0; bytes && i < _charArray.length; i += 1) {
+            bytes = _charArray[i] == i;
+        }
+        _bytes = bytes;
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -21,14 +36,30 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Returns an alphabet of the 256 byte values, in which character
+     *  number #k is the character with code K, so that the index of a
+     *  byte is its unsigned value. */
+    static Alphabet bytes() {
+        char[] chars = new char[BYTE_VALUES];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = (char) i;
+        }
+        return new Alphabet(new String(chars));
+    }
+
+    /** Returns true iff I am an alphabet of bytes (see bytes()). */
+    boolean isBytes() {
+        return _bytes;
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
-        return _chars.length();
+        return _charArray.length;
     }
 
     /** Returns true if preprocess(CH) is in this alphabet. */
     boolean contains(char ch) {
-        return _chars.contains(String.valueOf(ch));
+        return lookup(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -44,21 +75,111 @@ class Alphabet {
     /** Returns the index of character preprocess(CH), which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        boolean in = false;
-        int index = -1;
-        for (int i = 0; i < size(); i += 1) {
-            if (_charArray[i] == ch) {
-                in = true;
-                index = i;
-            }
-        }
-        if (!in) {
+        int index = lookup(ch);
+        if (index < 0) {
             throw new EnigmaException("Invalid character.");
         }
         return index;
     }
+
+    /** Return the index of CH, or -1 if it is not in this alphabet. */
+    private int lookup(char ch) {
+        if (_keys == null) {
+            return ch < _index.length ? _index[ch] : -1;
+        }
+        int slot = (ch * _multiplier) >>> _shift;
+        return _keys[slot] == ch ? _index[slot] : -1;
+    }
+
+    /** Fill _index as a table indexed directly by character, where MAX is
+     *  the largest character in the alphabet. */
+    private void buildDirect(int max) {
+        _index = new int[max + 1];
+        Arrays.fill(_index, -1);
+        for (int i = 0; i < _charArray.length; i += 1) {
+            if (_index[_charArray[i]] >= 0) {
+                throw error("duplicate character %c in alphabet",
+                            _charArray[i]);
+            }
+            _index[_charArray[i]] = i;
+        }
+    }
+
+    /** Fill _keys and _index as a collision-free multiplicative hash
+     *  table, for alphabets too sparse to index directly. */
+    private void buildHashed() {
+        int bits = Integer.SIZE - Integer.numberOfLeadingZeros(2 * size() - 1);
+        for (; bits <= Character.SIZE + 1; bits += 1) {
+            int mult = SEED;
+            for (int k = 0; k < HASH_TRIES; k += 1, mult += SEED_STEP) {
+                if (tryHash(bits, mult | 1)) {
+                    return;
+                }
+            }
+        }
+        buildDirect(Character.MAX_VALUE);
+    }
+
+    /** Attempt to place every character of the alphabet into a table of
+     *  2**BITS slots using multiplier MULT.  Returns true and installs the
+     *  table iff no two characters collide. */
+    private boolean tryHash(int bits, int mult) {
+        int shift = Integer.SIZE - bits;
+        char[] keys = new char[1 << bits];
+        int[] index = new int[1 << bits];
+        Arrays.fill(index, -1);
+        for (int i = 0; i < _charArray.length; i += 1) {
+            char c = _charArray[i];
+            int slot = (c * mult) >>> shift;
+            if (index[slot] >= 0) {
+                if (keys[slot] == c) {
+                    throw error("duplicate character %c in alphabet", c);
+                }
+                return false;
+            }
+            keys[slot] = c;
+            index[slot] = i;
+        }
+        _keys = keys;
+        _index = index;
+        _multiplier = mult;
+        _shift = shift;
+        return true;
+    }
+
+    /** Number of distinct byte values. */
+    static final int BYTE_VALUES = 1 << Byte.SIZE;
+
+    /** Alphabets whose largest character is below this are always
+     *  indexed directly. */
+    private static final int DIRECT_LIMIT = 256;
+
+    /** Alphabets that fill at least 1/DENSITY of the characters up to
+     *  their largest are indexed directly. */
+    private static final int DENSITY = 8;
+
+    /** Number of multipliers tried for each hash table size. */
+    private static final int HASH_TRIES = 64;
+
+    /** First multiplier tried when hashing. */
+    private static final int SEED = 0x9E3779B1;
+
+    /** Difference between successive multipliers tried when hashing. */
+    private static final int SEED_STEP = 0x6A09E667;
+
     /** String of characters.*/
     private String _chars;
     /** Array of characters in form of Strings.*/
     private char[] _charArray;
+    /** Index of each character: by character when _keys is null, else by
+     *  hash slot. Unused entries are -1. */
+    private int[] _index;
+    /** Character held in each hash slot, or null if indexed directly. */
+    private char[] _keys;
+    /** Multiplier of the perfect hash. */
+    private int _multiplier;
+    /** Right shift that reduces a hashed product to a slot number. */
+    private int _shift;
+    /** True iff I am an alphabet of bytes. */
+    private final boolean _bytes;
 }
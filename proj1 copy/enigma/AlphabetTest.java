@@ -0,0 +1,69 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Lisa Sam Wang
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that ALPHA maps each character of CHARS to its position
+     *  and back, and rejects every character in ABSENT. */
+    private void checkAlphabet(Alphabet alpha, String chars, String absent) {
+        assertEquals(chars.length(), alpha.size());
+        for (int i = 0; i < chars.length(); i += 1) {
+            char c = chars.charAt(i);
+            assertTrue(msg("contains", "'%c'", c), alpha.contains(c));
+            assertEquals(msg("toInt", "'%c'", c), i, alpha.toInt(c));
+            assertEquals(msg("toChar", "%d", i), c, alpha.toChar(i));
+        }
+        for (int i = 0; i < absent.length(); i += 1) {
+            assertFalse(alpha.contains(absent.charAt(i)));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkUpper() {
+        checkAlphabet(UPPER, UPPER_STRING, "abc*() \u0000\uFFFF");
+    }
+
+    @Test
+    public void checkSparse() {
+        String chars = "A\u4E00\u0416z\uFFEF\u00E9\u2603";
+        checkAlphabet(new Alphabet(chars), chars, "BZ\u4E01\u0000\uFFFF");
+    }
+
+    @Test
+    public void checkLarge() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = '\u3000'; c < '\u3000' + 2000; c += 3) {
+            chars.append(c);
+        }
+        checkAlphabet(new Alphabet(chars.toString()), chars.toString(),
+                      "\u3001\u3002A");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkInvalidChar() {
+        UPPER.toInt('a');
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicate() {
+        new Alphabet("ABCA");
+    }
+
+}
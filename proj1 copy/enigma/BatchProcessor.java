@@ -0,0 +1,188 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many files of settings lines and messages in one process.
+ *  All files share one configuration, whose rotors are built once.  Each
+ *  file is converted on its own thread by its own machine and
+ *  StreamingProcessor, so that its output goes through that processor's
+ *  buffer to its own channel.  Where the runtime provides virtual
+ *  threads, each file gets one; otherwise the files are divided among a
+ *  pool of one platform thread per processor.  At most MAX_OPEN files
+ *  are open at once.
+ *  @author Lisa Sam Wang
+ */
+class BatchProcessor {
+
+    /** A processor that converts each file with a machine made by
+     *  PROTOTYPE.fresh(), and that calls SETUP with that machine and each
+     *  settings line to configure it.  SETUP may be called from several
+     *  threads at once. */
+    BatchProcessor(Machine prototype, BiConsumer<Machine, String> setUp) {
+        _prototype = prototype;
+        _setUp = setUp;
+    }
+
+    /** Convert each of the files listed by the file named INPUTS, a
+     *  directory or a file with one name per line, into the file of the
+     *  same name in the directory named OUTDIR, which is created if need
+     *  be.  Failures are reported as for process, and then by an
+     *  EnigmaException. */
+    void processAll(String inputs, String outDir) {
+        Path out;
+        List<Path> files;
+        try {
+            out = Paths.get(outDir);
+            Files.createDirectories(out);
+            files = listInputs(Paths.get(inputs), out);
+            checkOutputs(files, out);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not list %s in %s", inputs, outDir);
+        }
+        int failed = process(files, out);
+        if (failed > 0) {
+            throw error("%d of %d files failed", failed, files.size());
+        }
+    }
+
+    /** Return the files listed by LIST: the regular files in it, in order
+     *  of name, if it is a directory other than OUTDIR, or else the file
+     *  named by each nonblank line of it. */
+    private static List<Path> listInputs(Path list, Path outDir)
+        throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        if (Files.isDirectory(list)) {
+            if (Files.isSameFile(list, outDir)) {
+                throw error("--batch output directory is the input");
+            }
+            try (Stream<Path> files = Files.list(list)) {
+                files.filter(Files::isRegularFile).sorted()
+                    .forEach(inputs::add);
+            }
+        } else {
+            for (String line : Files.readAllLines(list,
+                                                  Charset.defaultCharset())) {
+                if (!line.trim().isEmpty()) {
+                    inputs.add(Paths.get(line.trim()));
+                }
+            }
+        }
+        return inputs;
+    }
+
+    /** Check that no two of INPUTS have the same name, and that none
+     *  is its own output in OUTDIR, so that no output replaces another
+     *  or an input before it is read. */
+    private static void checkOutputs(List<Path> inputs, Path outDir)
+        throws IOException {
+        HashSet<Path> names = new HashSet<>();
+        for (Path input : inputs) {
+            Path output = outDir.resolve(input.getFileName());
+            if (!names.add(input.getFileName())) {
+                throw error("two inputs named %s", input.getFileName());
+            } else if (Files.exists(input) && Files.exists(output)
+                       && Files.isSameFile(input, output)) {
+                throw error("--batch input %s is its own output", input);
+            }
+        }
+    }
+
+    /** Convert each of INPUTS into the file of the same name in
+     *  directory OUTDIR.  A file that cannot be converted is reported
+     *  on the standard error without stopping the others.  Returns the
+     *  number of files that could not be converted. */
+    int process(List<Path> inputs, Path outDir) {
+        Semaphore open = new Semaphore(MAX_OPEN);
+        ArrayList<Future<?>> tasks = new ArrayList<>();
+        ExecutorService executor = newExecutor();
+        try {
+            for (Path input : inputs) {
+                Path output = outDir.resolve(input.getFileName());
+                tasks.add(executor.submit(() -> {
+                    open.acquireUninterruptibly();
+                    try {
+                        convert(input, output);
+                        return null;
+                    } finally {
+                        open.release();
+                    }
+                }));
+            }
+            int failed = 0;
+            for (int i = 0; i < tasks.size(); i += 1) {
+                try {
+                    tasks.get(i).get();
+                } catch (ExecutionException excp) {
+                    failed += 1;
+                    System.err.printf("Error: %s: %s%n", inputs.get(i),
+                                      excp.getCause().getMessage());
+                } catch (InterruptedException excp) {
+                    throw error("interrupted");
+                }
+            }
+            return failed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Convert the file INPUT into the file OUTPUT, replacing it. */
+    private void convert(Path input, Path output) throws IOException {
+        Machine machine = _prototype.fresh();
+        StreamingProcessor proc =
+            new StreamingProcessor(machine,
+                                   sett -> _setUp.accept(machine, sett));
+        try (FileChannel in = FileChannel.open(input,
+                                               StandardOpenOption.READ);
+             FileChannel out =
+                 FileChannel.open(output, StandardOpenOption.WRITE,
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING)) {
+            proc.process(in, out);
+        }
+    }
+
+    /** Return an executor that runs each task on a new virtual thread,
+     *  if this runtime has them, and otherwise on a pool of one thread
+     *  per processor.  Virtual threads are found reflectively, so that
+     *  this compiles and runs on runtimes that lack them. */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            return Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /** Largest number of files being converted at once. */
+    static final int MAX_OPEN = 128;
+
+    /** Source of the machine for each file. */
+    private final Machine _prototype;
+
+    /** Configures a machine from a settings line. */
+    private final BiConsumer<Machine, String> _setUp;
+}
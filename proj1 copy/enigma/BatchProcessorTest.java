@@ -0,0 +1,123 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BatchProcessor class.
+ *  @author Lisa Sam Wang
+ */
+public class BatchProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return MSG converted by a machine set up by SETTINGS, in groups
+     *  of five. */
+    private String expected(String settings, String msg) {
+        Machine mach = navalMachine();
+        setUpNaval(mach, settings);
+        return mach.convert(msg).replaceAll("(.{5})(?=.)", "$1 ") + "\n";
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkBatch() throws IOException {
+        Path in = Files.createTempDirectory("enigma");
+        Path out = in.resolve("out");
+        String[] settings = { "* B Beta III IV I AXLE",
+                              "* B Beta I II III QRST" };
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        ArrayList<Path> inputs = new ArrayList<>();
+        for (int k = 0; k < 2 * settings.length; k += 1) {
+            inputs.add(in.resolve("m" + k));
+            Files.write(inputs.get(k),
+                        (settings[k % 2] + "\n" + msg + "\n").getBytes());
+        }
+        inputs.add(in.resolve("bad"));
+        Files.write(inputs.get(inputs.size() - 1), "NOSETTINGS\n".getBytes());
+        Files.createDirectory(out);
+        try {
+            int failed = new BatchProcessor(navalMachine(),
+                                            TestUtils::setUpNaval)
+                .process(inputs, out);
+            assertEquals(1, failed);
+            for (int k = 0; k < 2 * settings.length; k += 1) {
+                assertEquals(expected(settings[k % 2], msg),
+                             new String(Files.readAllBytes(
+                                 out.resolve("m" + k))));
+            }
+        } finally {
+            for (Path file : inputs) {
+                Files.delete(file);
+                Files.deleteIfExists(out.resolve(file.getFileName()));
+            }
+            Files.delete(out);
+            Files.delete(in);
+        }
+    }
+
+    @Test
+    public void checkInputIsOutput() throws IOException {
+        Path out = Files.createTempDirectory("enigma");
+        Path input = out.resolve("m");
+        Path list = Files.createTempFile("enigma", ".list");
+        String text = "* B Beta III IV I AXLE\nHELLO\n";
+        Files.write(input, text.getBytes());
+        Files.write(list, (input + "\n").getBytes());
+        try {
+            new BatchProcessor(navalMachine(), TestUtils::setUpNaval)
+                .processAll(list.toString(), out.toString());
+            fail("input in the output directory was accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(text, new String(Files.readAllBytes(input)));
+        } finally {
+            Files.delete(input);
+            Files.delete(list);
+            Files.delete(out);
+        }
+    }
+
+    @Test
+    public void checkDuplicateNames() throws IOException {
+        Path in = Files.createTempDirectory("enigma");
+        Path out = Files.createTempDirectory("enigma");
+        Path[] inputs = { in.resolve("a"), in.resolve("b"),
+                          in.resolve("a").resolve("m"),
+                          in.resolve("b").resolve("m") };
+        Path list = in.resolve("list");
+        Files.createDirectory(inputs[0]);
+        Files.createDirectory(inputs[1]);
+        for (Path input : new Path[] { inputs[2], inputs[3] }) {
+            Files.write(input, "* B Beta III IV I AXLE\nHELLO\n".getBytes());
+        }
+        Files.write(list, (inputs[2] + "\n" + inputs[3] + "\n").getBytes());
+        try {
+            new BatchProcessor(navalMachine(), TestUtils::setUpNaval)
+                .processAll(list.toString(), out.toString());
+            fail("two inputs with the same name were accepted");
+        } catch (EnigmaException excp) {
+            assertFalse(Files.exists(out.resolve("m")));
+        } finally {
+            Files.delete(list);
+            for (int k = inputs.length - 1; k >= 0; k -= 1) {
+                Files.delete(inputs[k]);
+            }
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+}
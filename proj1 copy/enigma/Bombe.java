@@ -0,0 +1,362 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A simulation of the Turing-Welchman bombe, which finds the starting
+ *  settings of a given rotor order, together with part of the plugboard,
+ *  under which a ciphertext could decrypt to a crib at a known offset.
+ *  The crib and ciphertext form a menu: a graph on the letters with an
+ *  edge p -- c labeled i wherever crib letter p lies over ciphertext
+ *  letter c at position i.  Since the plugboard S is an involution, at
+ *  each position the machine without a plugboard (the scrambler) must
+ *  carry S(p) to S(c).  For each starting setting, the bombe hypothesizes
+ *  a partner for the most connected letter of the largest connected part
+ *  of the menu, and follows the consequences along the edges, and through
+ *  the diagonal board (if a is steckered to b, then b is steckered to a),
+ *  recording the implied partners of each letter in a bitset register.
+ *  A hypothesis that gives any letter two partners is inconsistent, as
+ *  are all the other partners of the test letter that it implies; a
+ *  setting is a stop only if some hypothesis is consistent.
+ *  @author Lisa Sam Wang
+ */
+class Bombe {
+
+    /** A bombe for the rotor order in SPEC, whose plugboard is ignored. */
+    Bombe(MachineSpec spec) {
+        _alphabet = spec.alphabet();
+        _size = _alphabet.size();
+        _spec = spec.withPlugboard(new Permutation("", _alphabet));
+        _words = (_size + Long.SIZE - 1) / Long.SIZE;
+        _registers = new long[_size][_words];
+        if (KeystreamCache.usable(_spec, CACHE_BUDGET)) {
+            _cache = new KeystreamCache(_spec, CACHE_BUDGET);
+        } else {
+            _cache = null;
+        }
+    }
+
+    /** Return the stops, in order of starting setting, of a run with
+     *  CRIB at position OFFSET (counting from 0) of CIPHERTEXT.  Blanks
+     *  are ignored. */
+    List<Stop> run(String ciphertext, String crib, int offset) {
+        String cipher = ciphertext.replace(" ", "");
+        String plain = crib.replace(" ", "");
+        if (offset < 0 || offset + plain.length() > cipher.length()) {
+            throw error("crib does not fit in ciphertext");
+        }
+        buildMenu(cipher.substring(offset, offset + plain.length()), plain);
+        int len = plain.length();
+        int numRotors = _spec.numRotors();
+        _scramblers = new int[len][_size];
+        _positions = new int[len][numRotors];
+        _tables = new int[len][];
+        _fast = new int[len];
+        long positions = 1;
+        for (int k = 1; k < numRotors; k += 1) {
+            positions *= _size;
+        }
+        ArrayList<Stop> stops = new ArrayList<>();
+        int[] start = new int[numRotors];
+        long[] tried = new long[_words];
+        for (long posn = 0; posn < positions; posn += 1) {
+            long p = posn;
+            for (int k = numRotors - 1; k > 0; k -= 1) {
+                start[k] = (int) (p % _size);
+                p /= _size;
+            }
+            int[] settings = _spec.settingsAfter(start, offset);
+            for (int i = 0; i < len; i += 1) {
+                _spec.step(settings);
+                if (_cache != null) {
+                    _tables[i] = _cache.table(settings);
+                    _fast[i] = settings[numRotors - 1] * _size;
+                } else {
+                    System.arraycopy(settings, 0, _positions[i], 0,
+                                     numRotors);
+                    Arrays.fill(_scramblers[i], -1);
+                }
+            }
+            Arrays.fill(tried, 0);
+            for (int x = 0; x < _size; x += 1) {
+                if ((tried[x / Long.SIZE] & (1L << (x % Long.SIZE))) != 0) {
+                    continue;
+                }
+                if (closure(x)) {
+                    stops.add(new Stop(start.clone(), partners()));
+                }
+                for (int w = 0; w < _words; w += 1) {
+                    tried[w] |= _registers[_test][w];
+                }
+            }
+        }
+        return stops;
+    }
+
+    /** A stop of the bombe: a starting setting and the partners under the
+     *  plugboard implied there for the letters of the menu's connected
+     *  part. */
+    class Stop {
+
+        /** A stop at rotor settings SETTINGS (one per slot), where letter
+         *  k is steckered to PARTNERS[k], or PARTNERS[k] is -1 if
+         *  unknown. */
+        Stop(int[] settings, int[] partners) {
+            _settings = settings;
+            _partners = partners;
+        }
+
+        /** Return the starting settings, as for Machine.setRotors. */
+        String setting() {
+            char[] result = new char[_settings.length - 1];
+            for (int k = 1; k < _settings.length; k += 1) {
+                result[k - 1] = _alphabet.toChar(_settings[k]);
+            }
+            return new String(result);
+        }
+
+        /** Return the partner under the plugboard of character C, or 0 if
+         *  it is not known. */
+        char partner(char c) {
+            int p = _partners[_alphabet.toInt(c)];
+            return p < 0 ? 0 : _alphabet.toChar(p);
+        }
+
+        /** Return the implied plugboard pairs in cycle notation. */
+        String plugboard() {
+            StringBuilder cycles = new StringBuilder();
+            for (int a = 0; a < _size; a += 1) {
+                if (_partners[a] > a) {
+                    cycles.append('(').append(_alphabet.toChar(a))
+                        .append(_alphabet.toChar(_partners[a])).append(')');
+                }
+            }
+            return cycles.toString();
+        }
+
+        /** Return the starting setting and implied plugboard pairs, as
+         *  they would appear at the end of a settings line. */
+        @Override
+        public String toString() {
+            return (setting() + " " + plugboard()).trim();
+        }
+
+        /** The setting of each slot. */
+        private final int[] _settings;
+        /** The partner of each letter under the plugboard, or -1. */
+        private final int[] _partners;
+    }
+
+    /** Build the menu of crib PLAIN over ciphertext CIPHER, which have the
+     *  same length, and choose the test letter. */
+    private void buildMenu(String cipher, String plain) {
+        int[] degree = new int[_size];
+        int len = plain.length();
+        _ends = new int[2 * len];
+        for (int i = 0; i < len; i += 1) {
+            _ends[2 * i] = _alphabet.toInt(plain.charAt(i));
+            _ends[2 * i + 1] = _alphabet.toInt(cipher.charAt(i));
+            degree[_ends[2 * i]] += 1;
+            degree[_ends[2 * i + 1]] += 1;
+        }
+        _edges = new int[_size][];
+        for (int a = 0; a < _size; a += 1) {
+            _edges[a] = new int[degree[a]];
+        }
+        int maxDegree = 0;
+        for (int a = 0; a < _size; a += 1) {
+            maxDegree = Math.max(maxDegree, degree[a]);
+        }
+        _stack = new int[2 * _size * (1 + maxDegree)];
+        int[] fill = new int[_size];
+        for (int e = 0; e < _ends.length; e += 1) {
+            int a = _ends[e];
+            _edges[a][fill[a]] = e;
+            fill[a] += 1;
+        }
+        _test = testLetter(degree);
+    }
+
+    /** Return the letter of highest DEGREE in the largest connected part
+     *  of the menu: the one with the most edges, or of those, the fewest
+     *  letters, and so the most loops.  Only the part containing the test
+     *  letter constrains a stop, so a small part would let through stops
+     *  that the rest of the menu contradicts. */
+    private int testLetter(int[] degree) {
+        int[] root = new int[_size];
+        for (int a = 0; a < _size; a += 1) {
+            root[a] = a;
+        }
+        for (int e = 0; e < _ends.length; e += 2) {
+            root[find(root, _ends[e])] = find(root, _ends[e + 1]);
+        }
+        int[] edges = new int[_size], letters = new int[_size];
+        for (int a = 0; a < _size; a += 1) {
+            int r = find(root, a);
+            edges[r] += degree[a];
+            letters[r] += degree[a] > 0 ? 1 : 0;
+        }
+        int best = find(root, _ends[0]);
+        for (int r = 0; r < _size; r += 1) {
+            if (edges[r] > edges[best]
+                || edges[r] == edges[best] && letters[r] < letters[best]) {
+                best = r;
+            }
+        }
+        int test = -1;
+        for (int a = 0; a < _size; a += 1) {
+            if (find(root, a) == best
+                && (test < 0 || degree[a] > degree[test])) {
+                test = a;
+            }
+        }
+        return test;
+    }
+
+    /** Return the representative of the part of the menu containing A,
+     *  where ROOT links each letter toward its representative. */
+    private static int find(int[] root, int a) {
+        while (root[a] != a) {
+            root[a] = root[root[a]];
+            a = root[a];
+        }
+        return a;
+    }
+
+    /** Follow the consequences of the hypothesis that the test letter is
+     *  steckered to X at the current rotor positions, leaving the implied
+     *  partners of each letter in the registers, and return true iff they
+     *  are consistent, stopping at the first contradiction.  Because the
+     *  scrambler and the diagonal board are both involutions, every
+     *  hypothesis reached is equivalent to X: if any is inconsistent, so
+     *  are they all. */
+    private boolean closure(int x) {
+        for (long[] register : _registers) {
+            Arrays.fill(register, 0);
+        }
+        int top = push(0, _test, x);
+        while (top > 0) {
+            top -= 2;
+            int a = _stack[top], s = _stack[top + 1];
+            long bit = 1L << (s % Long.SIZE);
+            long[] register = _registers[a];
+            if ((register[s / Long.SIZE] & bit) != 0) {
+                continue;
+            }
+            register[s / Long.SIZE] |= bit;
+            if (count(register) > 1) {
+                return false;
+            }
+            top = push(top, s, a);
+            for (int e : _edges[a]) {
+                int b = _ends[e ^ 1];
+                top = push(top, b, scrambler(e / 2, s));
+            }
+        }
+        return true;
+    }
+
+    /** Return the conversion of S by the scrambler at crib position I.
+     *  Conversions come from the keystream cache, which shares them among
+     *  the starting settings that differ only in the fast rotor, or
+     *  failing that are computed only when first needed. */
+    private int scrambler(int i, int s) {
+        if (_cache != null) {
+            return _tables[i][_fast[i] + s];
+        }
+        int result = _scramblers[i][s];
+        if (result < 0) {
+            result = _spec.scramble(s, _positions[i]);
+            _scramblers[i][s] = result;
+        }
+        return result;
+    }
+
+    /** Push the hypothesis that A is steckered to S onto the stack, whose
+     *  top is at TOP, and return the new top. */
+    private int push(int top, int a, int s) {
+        if (top + 2 > _stack.length) {
+            _stack = Arrays.copyOf(_stack, 2 * _stack.length);
+        }
+        _stack[top] = a;
+        _stack[top + 1] = s;
+        return top + 2;
+    }
+
+    /** Return the number of bits set in REGISTER. */
+    private int count(long[] register) {
+        int n = 0;
+        for (long word : register) {
+            n += Long.bitCount(word);
+        }
+        return n;
+    }
+
+    /** Return the partner of each letter recorded in the registers, or -1
+     *  for letters with none. */
+    private int[] partners() {
+        int[] result = new int[_size];
+        for (int a = 0; a < _size; a += 1) {
+            result[a] = -1;
+            for (int w = 0; w < _words; w += 1) {
+                if (_registers[a][w] != 0) {
+                    result[a] = w * Long.SIZE
+                        + Long.numberOfTrailingZeros(_registers[a][w]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Memory budget in bytes of the scrambler tables. */
+    static final long CACHE_BUDGET = 1L << 26;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** The rotor order tested, with no plugboard. */
+    private final MachineSpec _spec;
+
+    /** Number of longs in each register. */
+    private final int _words;
+
+    /** For each letter, the set of partners implied for it. */
+    private final long[][] _registers;
+
+    /** Pending hypotheses (letter, partner), as pairs of entries. */
+    private int[] _stack;
+
+    /** Scrambler tables for the rotor order, or null if they cannot be
+     *  cached. */
+    private final KeystreamCache _cache;
+
+    /** The table from _cache for each crib position. */
+    private int[][] _tables;
+
+    /** The offset in _tables[i] of the row for the setting of the fast
+     *  rotor at each crib position i. */
+    private int[] _fast;
+
+    /** The rotor settings at each crib position, without _cache. */
+    private int[][] _positions;
+
+    /** The conversion of each letter by the scrambler at each crib
+     *  position, or -1 where not yet computed, without _cache. */
+    private int[][] _scramblers;
+
+    /** The letters at the ends of the menu edges: edge i joins _ends[2i]
+     *  (the crib letter) and _ends[2i + 1] (the ciphertext letter). */
+    private int[] _ends;
+
+    /** For each letter, the indices in _ends at which it appears. */
+    private int[][] _edges;
+
+    /** The letter whose partner is hypothesized. */
+    private int _test;
+}
@@ -0,0 +1,94 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Lisa Sam Wang
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a 4-slot, 3-pawl machine with reflector B and naval rotors
+     *  I, II, and III at SETTING, with plugboard PLUGBOARD. */
+    private Machine machine(String setting, String plugboard) {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        all.add(new MovingRotor("I", new Permutation(NAVALA.get("I"), UPPER),
+                                "Q"));
+        all.add(new MovingRotor("II",
+                                new Permutation(NAVALA.get("II"), UPPER),
+                                "E"));
+        all.add(new MovingRotor("III",
+                                new Permutation(NAVALA.get("III"), UPPER),
+                                "V"));
+        Machine mach = new Machine(UPPER, 4, 3, all);
+        mach.insertRotors(new String[] { "B", "I", "II", "III" });
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation(plugboard, UPPER));
+        return mach;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkStops() {
+        String plugs = "(AT)(BL)(EQ)(HK)(MO)(RW)";
+        String plain = "WETTERVORHERSAGEBISKAYA";
+        String cipher = machine("QEV", plugs).convert("XX" + plain);
+        Bombe bombe = new Bombe(machine("AAA", "").spec());
+        List<Bombe.Stop> stops = bombe.run(cipher, plain, 2);
+        Bombe.Stop found = null;
+        for (Bombe.Stop stop : stops) {
+            if (stop.setting().equals("QEV")) {
+                found = stop;
+            }
+        }
+        assertNotNull(found);
+        assertTrue(stops.size() < 26 * 26);
+        Permutation plugboard = new Permutation(plugs, UPPER);
+        for (char c : plain.toCharArray()) {
+            if (found.partner(c) != 0) {
+                assertEquals(plugboard.permute(c), found.partner(c));
+            }
+        }
+        assertEquals('T', found.partner('A'));
+    }
+
+    @Test
+    public void checkLargestPartOfMenu() {
+        String plugs = "(AT)(BL)(EQ)(HK)(MO)(RW)";
+        String plain = "THEQUICKBROWNFOXJUMPS";
+        String cipher = machine("QEV", plugs).convert(plain);
+        Bombe bombe = new Bombe(machine("AAA", "").spec());
+        List<Bombe.Stop> stops = bombe.run(cipher, plain, 0);
+        Permutation plugboard = new Permutation(plugs, UPPER);
+        boolean found = false;
+        for (Bombe.Stop stop : stops) {
+            if (stop.setting().equals("QEV")) {
+                found = true;
+                assertNotEquals("", stop.plugboard());
+                for (char c : plain.toCharArray()) {
+                    if (stop.partner(c) != 0) {
+                        assertEquals(plugboard.permute(c), stop.partner(c));
+                    }
+                }
+            }
+        }
+        assertTrue(found);
+        assertTrue(stops.size() < 10);
+    }
+
+}
@@ -0,0 +1,181 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static enigma.EnigmaException.*;
+
+/** Applies a machine with an alphabet of bytes to a binary payload.
+ *  Every byte of the input is converted, with no charset decoding, no
+ *  settings lines, and no grouping of the output.  When both ends are
+ *  files, the input and output are memory-mapped a region at a time and
+ *  converted directly from one mapping to the other; otherwise the bytes
+ *  pass through a reusable direct buffer, converted in place.
+ *  @author Lisa Sam Wang
+ */
+class ByteProcessor {
+
+    /** A processor that converts bytes with MACHINE, which must have an
+     *  alphabet of bytes and be set up. */
+    ByteProcessor(Machine machine) {
+        _machine = machine;
+    }
+
+    /** Set M, which must have an alphabet of bytes, according to KEY,
+     *  a settings line in the hexadecimal notation of *BYTES
+     *  configurations (see hexChars and hexPermutation), whose leading
+     *  '*' may be omitted. */
+    static void setUp(Machine M, String key) {
+        if (!M.alphabet().isBytes()) {
+            throw error("--bytes requires a *BYTES configuration");
+        }
+        String[] S = key.trim().split("\\s+");
+        int first = S[0].equals("*") ? 1 : 0;
+        int n = M.numRotors();
+        if (S.length - first < n + 1) {
+            throw error("Wrong number of arguments in settings");
+        }
+        String[] R = Arrays.copyOfRange(S, first, first + n);
+        if (new HashSet<>(Arrays.asList(R)).size() != n) {
+            throw error("You already used this rotor");
+        }
+        M.insertRotors(R);
+        if (!M.myRotors()[0].reflecting()) {
+            throw error("First rotor has to be a reflector");
+        }
+        String setting = hexChars(S[first + n]);
+        if (setting.length() != n - 1) {
+            throw error("Wrong length of string");
+        }
+        int[] settings = new int[n];
+        for (int k = 1; k < n; k += 1) {
+            settings[k] = setting.charAt(k - 1);
+        }
+        M.state().set(settings);
+        StringBuilder plugs = new StringBuilder();
+        for (int i = first + n + 1; i < S.length; i += 1) {
+            plugs.append(S[i]);
+        }
+        M.setPlugboard(hexPermutation(plugs.toString(), M.alphabet()));
+    }
+
+    /** Return the string of the characters of an alphabet of bytes whose
+     *  indices are written in HEX, two hexadecimal digits each. */
+    static String hexChars(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw error("bad hexadecimal bytes: %s", hex);
+        }
+        char[] result = new char[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = Character.digit(hex.charAt(2 * i), HEX);
+            int lo = Character.digit(hex.charAt(2 * i + 1), HEX);
+            if (hi < 0 || lo < 0) {
+                throw error("bad hexadecimal bytes: %s", hex);
+            }
+            result[i] = (char) (hi * HEX + lo);
+        }
+        return new String(result);
+    }
+
+    /** Return the permutation of ALPHA, an alphabet of bytes, given
+     *  by CYCLES in cycle notation with each byte written as two
+     *  hexadecimal digits.  Whitespace is ignored. */
+    static Permutation hexPermutation(String cycles, Alphabet alpha) {
+        int[] forward = new int[alpha.size()];
+        for (int i = 0; i < forward.length; i += 1) {
+            forward[i] = i;
+        }
+        String text = cycles.replaceAll("\\s", "");
+        int start = -1;
+        for (int i = 0; i < text.length(); i += 1) {
+            if (text.charAt(i) == '(' && start < 0) {
+                start = i + 1;
+            } else if (text.charAt(i) == ')' && start >= 0) {
+                String cycle = hexChars(text.substring(start, i));
+                for (int k = 0; k < cycle.length(); k += 1) {
+                    forward[cycle.charAt(k)] =
+                        cycle.charAt((k + 1) % cycle.length());
+                }
+                start = -1;
+            } else if (start < 0) {
+                throw error("bad cycles: %s", cycles);
+            }
+        }
+        if (start >= 0) {
+            throw error("unbalanced parentheses in %s", cycles);
+        }
+        return new Permutation(forward, alpha);
+    }
+
+    /** Convert the bytes from IN until end of input, writing them to OUT
+     *  as for process, and close both.  I/O errors are reported as
+     *  EnigmaExceptions. */
+    void processAll(ReadableByteChannel in, WritableByteChannel out) {
+        try {
+            process(in, out);
+            in.close();
+            out.close();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Convert the bytes from IN until end of input and write them to
+     *  OUT.  An output file must be open for reading as well as writing
+     *  to be mapped. */
+    void process(ReadableByteChannel in, WritableByteChannel out)
+        throws IOException {
+        if (in instanceof FileChannel && out instanceof FileChannel) {
+            processMapped((FileChannel) in, (FileChannel) out);
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        while (in.read(buf) >= 0) {
+            buf.flip();
+            _machine.convert(buf.duplicate(), buf);
+            buf.flip();
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            buf.clear();
+        }
+    }
+
+    /** Convert the rest of file IN into file OUT from its current
+     *  position, through memory mappings of at most MAP_SIZE bytes. */
+    private void processMapped(FileChannel in, FileChannel out)
+        throws IOException {
+        long start = in.position(), size = in.size() - start;
+        long base = out.position();
+        for (long pos = 0; pos < size; pos += MAP_SIZE) {
+            long len = Math.min(MAP_SIZE, size - pos);
+            MappedByteBuffer src =
+                in.map(FileChannel.MapMode.READ_ONLY, start + pos, len);
+            MappedByteBuffer dst =
+                out.map(FileChannel.MapMode.READ_WRITE, base + pos, len);
+            _machine.convert(src, dst);
+        }
+        in.position(start + size);
+        out.position(base + size);
+    }
+
+    /** Radix of hexadecimal numerals. */
+    private static final int HEX = 16;
+
+    /** Size of the buffer used for channels that are not files. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Largest region of a file mapped at once. */
+    static final long MAP_SIZE = 1L << 26;
+
+    /** The machine that converts the bytes. */
+    private final Machine _machine;
+}
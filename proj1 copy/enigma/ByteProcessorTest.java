@@ -0,0 +1,167 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ByteProcessor class.
+ *  @author Lisa Sam Wang
+ */
+public class ByteProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A settings line for machine(). */
+    private static final String KEY = "R A B 0102 (0a0b) (ff 00)";
+
+    /** Return, in hexadecimal cycle notation, the permutation of the
+     *  byte values that takes each k to k + STRIDE (mod 256), where
+     *  STRIDE is odd. */
+    private static String cycle(int stride) {
+        StringBuilder result = new StringBuilder("(");
+        for (int k = 0; k < 256; k += 1) {
+            result.append(String.format("%02x", k * stride % 256));
+        }
+        return result.append(")").toString();
+    }
+
+    /** Return, in hexadecimal cycle notation, the involution of the byte
+     *  values that swaps each 2k and 2k + 1. */
+    private static String pairs() {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < 256; k += 2) {
+            result.append(String.format("(%02x%02x)", k, k + 1));
+        }
+        return result.toString();
+    }
+
+    /** Return a 3-slot, 2-pawl machine on the byte values, with reflector
+     *  R and moving rotors A and B. */
+    private static Machine machine() {
+        Alphabet bytes = Alphabet.bytes();
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("R",
+                              ByteProcessor.hexPermutation(pairs(), bytes)));
+        all.add(new MovingRotor(
+                    "A", ByteProcessor.hexPermutation(cycle(37), bytes),
+                    ByteProcessor.hexChars("05")));
+        all.add(new MovingRotor(
+                    "B", ByteProcessor.hexPermutation(cycle(101), bytes),
+                    ByteProcessor.hexChars("0080")));
+        return new Machine(bytes, 3, 2, all);
+    }
+
+    /** Return DATA converted byte by byte by machine() set up by KEY. */
+    private static byte[] expected(byte[] data) {
+        Machine mach = machine();
+        ByteProcessor.setUp(mach, KEY);
+        byte[] result = new byte[data.length];
+        for (int i = 0; i < data.length; i += 1) {
+            result[i] = (byte) mach.convert(data[i] & 0xff);
+        }
+        return result;
+    }
+
+    /** Return a processor for machine() set up by KEY. */
+    private static ByteProcessor processor() {
+        Machine mach = machine();
+        ByteProcessor.setUp(mach, KEY);
+        return new ByteProcessor(mach);
+    }
+
+    /** Return N random bytes. */
+    private static byte[] randomBytes(int n) {
+        byte[] data = new byte[n];
+        new Random(17).nextBytes(data);
+        return data;
+    }
+
+    /** Convert file INPUT into file OUTPUT with a new processor(), using
+     *  file channels so that both are mapped. */
+    private static void convertFile(Path input, Path output)
+        throws IOException {
+        processor().processAll(
+            FileChannel.open(input, StandardOpenOption.READ),
+            FileChannel.open(output, StandardOpenOption.READ,
+                             StandardOpenOption.WRITE,
+                             StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSetUp() {
+        Machine mach = machine();
+        ByteProcessor.setUp(mach, "* " + KEY);
+        assertEquals("R", mach.myRotors()[0].name());
+        assertEquals("B", mach.myRotors()[2].name());
+        assertArrayEquals(new int[] { 0, 1, 2 }, mach.state().settings());
+        Permutation plugs = mach.spec().plugboard();
+        assertEquals(0x0b, plugs.permute(0x0a));
+        assertEquals(0x00, plugs.permute(0xff));
+        assertEquals(0x0c, plugs.permute(0x0c));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRejectsLetterMachine() {
+        ByteProcessor.setUp(navalMachine(), "B Beta III IV I AAAA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRejectsBadHex() {
+        ByteProcessor.setUp(machine(), "R A B 01zz");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRejectsBadPlugboard() {
+        ByteProcessor.setUp(machine(), "R A B 0102 (0a0b");
+    }
+
+    @Test
+    public void checkChannels() {
+        byte[] data = randomBytes(2 * ByteProcessor.BUFFER_SIZE + 17);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        processor().processAll(
+            Channels.newChannel(new ByteArrayInputStream(data)),
+            Channels.newChannel(out));
+        assertArrayEquals(expected(data), out.toByteArray());
+    }
+
+    @Test
+    public void checkMapped() throws IOException {
+        byte[] data = randomBytes(3 * ByteProcessor.BUFFER_SIZE + 5);
+        Path input = Files.createTempFile("enigma", ".in");
+        Path output = Files.createTempFile("enigma", ".out");
+        Path back = Files.createTempFile("enigma", ".back");
+        try {
+            Files.write(input, data);
+            convertFile(input, output);
+            assertArrayEquals(expected(data), Files.readAllBytes(output));
+            convertFile(output, back);
+            assertArrayEquals(data, Files.readAllBytes(back));
+        } finally {
+            Files.delete(input);
+            Files.delete(output);
+            Files.delete(back);
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Collection;
+
+import static enigma.EnigmaException.*;
+
+/** The binary form of a machine configuration, which can be loaded
+ *  without tokenizing or parsing cycles.  A compiled configuration is
+ *  a big-endian sequence of
+ *    int    MAGIC
+ *    int    VERSION
+ *    int    size of the alphabet, n
+ *    char   the n characters of the alphabet
+ *    int    number of rotor slots
+ *    int    number of pawls
+ *    int    number of rotors
+ *  and then, for each rotor,
+ *    int    length of its name, followed by the name's chars
+ *    byte   its type: 'M', 'N', or 'R'
+ *    char   its permutation as a table of n indices
+ *    long   its notches as a bitset of ceil(n / 64) words.
+ *  The configuration of a *BYTES machine is recorded by its alphabet,
+ *  which is then the 256 byte values in order (see Alphabet.isBytes).
+ *  A rotor's record after its name has a fixed size, so loading a
+ *  configuration reads only the names; each rotor's table is read from
+ *  the (usually memory-mapped) buffer when the rotor is first used.
+ *  @author Lisa Sam Wang
+ */
+class CompiledConfig {
+
+    /** Return true iff DATA, from its position, begins with the magic
+     *  number of a compiled configuration. */
+    static boolean isCompiled(ByteBuffer data) {
+        return data.remaining() >= Integer.BYTES
+            && data.getInt(data.position()) == MAGIC;
+    }
+
+    /** Write the configuration of MACHINE (its alphabet, slots, pawls,
+     *  and all its available rotors) to the file FILE, replacing it. */
+    static void write(Machine machine, Path file) throws IOException {
+        Alphabet alpha = machine.alphabet();
+        int n = alpha.size();
+        Collection<Rotor> rotors = machine.allRotors();
+        long size = HEADER_INTS * Integer.BYTES + (long) n * Character.BYTES;
+        for (Rotor rotor : rotors) {
+            size += Integer.BYTES
+                + (long) rotor.name().length() * Character.BYTES
+                + recordSize(n);
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw error("configuration too large to compile");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(MAGIC).putInt(VERSION).putInt(n);
+        for (int i = 0; i < n; i += 1) {
+            out.putChar(alpha.toChar(i));
+        }
+        out.putInt(machine.numRotors()).putInt(machine.numPawls());
+        out.putInt(rotors.size());
+        for (Rotor rotor : rotors) {
+            out.putInt(rotor.name().length());
+            for (int i = 0; i < rotor.name().length(); i += 1) {
+                out.putChar(rotor.name().charAt(i));
+            }
+            out.put(rotor.reflecting() ? REFLECTOR
+                    : rotor.rotates() ? MOVING : FIXED);
+            Permutation perm = rotor.permutation();
+            for (int i = 0; i < n; i += 1) {
+                out.putChar((char) perm.permute(i));
+            }
+            long[] notches = new long[words(n)];
+            for (int i = 0; i < n; i += 1) {
+                if (rotor.atNotch(i)) {
+                    notches[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+                }
+            }
+            for (long word : notches) {
+                out.putLong(word);
+            }
+        }
+        out.flip();
+        try (FileChannel channel =
+             FileChannel.open(file, StandardOpenOption.WRITE,
+                              StandardOpenOption.CREATE,
+                              StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    /** Write the machine described by the configuration file named
+     *  CONFIG, read by ConfigReader, to the file named FILE as a compiled
+     *  configuration. */
+    static void compile(String config, String file) {
+        Machine machine = new ConfigReader(config, true).read();
+        try {
+            write(machine, Paths.get(file));
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return a machine configured by the compiled configuration in DATA
+     *  from its position.  DATA is kept, and must not change, until all
+     *  the machine's rotors have been used. */
+    static Machine read(ByteBuffer data) {
+        ByteBuffer in = data.slice();
+        try {
+            if (in.getInt() != MAGIC) {
+                throw error("not a compiled configuration");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw error("compiled configuration has version %d, not %d",
+                            version, VERSION);
+            }
+            int n = length(in, Character.BYTES);
+            char[] chars = new char[n];
+            for (int i = 0; i < n; i += 1) {
+                chars[i] = in.getChar();
+            }
+            Alphabet alpha = new Alphabet(new String(chars));
+            int numRotors = in.getInt();
+            int pawls = in.getInt();
+            int count = in.getInt();
+            RotorCatalog catalog = new RotorCatalog();
+            for (int r = 0; r < count; r += 1) {
+                char[] name = new char[length(in, Character.BYTES)];
+                for (int i = 0; i < name.length; i += 1) {
+                    name[i] = in.getChar();
+                }
+                String rotorName = new String(name);
+                int record = in.position();
+                if (record + recordSize(n) > in.limit()) {
+                    throw error("compiled configuration truncated");
+                }
+                catalog.add(rotorName,
+                            () -> rotor(in, record, rotorName, alpha));
+                in.position(record + (int) recordSize(n));
+            }
+            return new Machine(alpha, numRotors, pawls, catalog);
+        } catch (BufferUnderflowException excp) {
+            throw error("compiled configuration truncated");
+        }
+    }
+
+    /** Return the next int of IN, the length of a sequence of items of
+     *  SIZE bytes each, checking that they fit in the rest of IN. */
+    private static int length(ByteBuffer in, int size) {
+        int len = in.getInt();
+        if (len < 0 || len > in.remaining() / size) {
+            throw error("compiled configuration truncated");
+        }
+        return len;
+    }
+
+    /** Return the rotor named NAME over ALPHA whose record starts at
+     *  position RECORD of DATA. */
+    private static Rotor rotor(ByteBuffer data, int record, String name,
+                               Alphabet alpha) {
+        int n = alpha.size();
+        byte type = data.get(record);
+        int[] forward = new int[n];
+        int pos = record + 1;
+        for (int i = 0; i < n; i += 1, pos += Character.BYTES) {
+            forward[i] = data.getChar(pos);
+        }
+        Permutation perm = new Permutation(forward, alpha);
+        switch (type) {
+        case MOVING:
+            StringBuilder notches = new StringBuilder();
+            for (int w = 0; w < words(n); w += 1, pos += Long.BYTES) {
+                long word = data.getLong(pos);
+                for (; word != 0; word &= word - 1) {
+                    int i = w * Long.SIZE + Long.numberOfTrailingZeros(word);
+                    notches.append(alpha.toChar(i));
+                }
+            }
+            return new MovingRotor(name, perm, notches.toString());
+        case FIXED:
+            return new FixedRotor(name, perm);
+        case REFLECTOR:
+            return new Reflector(name, perm);
+        default:
+            throw error("bad rotor type in compiled configuration");
+        }
+    }
+
+    /** Return the size in bytes of the record of a rotor, after its name,
+     *  for an alphabet of N characters. */
+    private static long recordSize(int n) {
+        return 1 + (long) n * Character.BYTES + (long) words(n) * Long.BYTES;
+    }
+
+    /** Return the number of longs in a bitset of N bits. */
+    private static int words(int n) {
+        return (n + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /** Identifies a compiled configuration ("ENIG"). */
+    static final int MAGIC = 0x454e4947;
+
+    /** Version of the format written. */
+    static final int VERSION = 1;
+
+    /** Number of ints in the header, apart from the alphabet. */
+    private static final int HEADER_INTS = 6;
+
+    /** Type of a moving rotor. */
+    private static final byte MOVING = 'M';
+
+    /** Type of a fixed rotor. */
+    private static final byte FIXED = 'N';
+
+    /** Type of a reflector. */
+    private static final byte REFLECTOR = 'R';
+}
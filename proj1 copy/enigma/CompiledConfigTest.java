@@ -0,0 +1,84 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CompiledConfig class.
+ *  @author Lisa Sam Wang
+ */
+public class CompiledConfigTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the contents of a compiled configuration of MACH. */
+    private ByteBuffer compile(Machine mach) throws IOException {
+        Path file = Files.createTempFile("enigma", ".cfg");
+        try {
+            CompiledConfig.write(mach, file);
+            return ByteBuffer.wrap(Files.readAllBytes(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        Machine original = navalMachine();
+        ByteBuffer data = compile(original);
+        assertTrue(CompiledConfig.isCompiled(data));
+        Machine loaded = CompiledConfig.read(data);
+        assertEquals(5, loaded.numRotors());
+        assertEquals(3, loaded.numPawls());
+        assertEquals(UPPER_STRING.length(), loaded.alphabet().size());
+        assertEquals(6, loaded.allRotors().size());
+        String[] rotors = { "B", "Beta", "III", "IV", "I" };
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        for (Machine mach : new Machine[] { original, loaded }) {
+            mach.insertRotors(rotors);
+            mach.setRotors("AXUZ");
+            mach.setPlugboard(new Permutation("(HQ) (EX) (IP)", UPPER));
+        }
+        assertEquals(original.convert(msg), loaded.convert(msg));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkVersion() throws IOException {
+        ByteBuffer data = compile(navalMachine());
+        data.putInt(Integer.BYTES, CompiledConfig.VERSION + 1);
+        CompiledConfig.read(data);
+    }
+
+    @Test
+    public void checkByteAlphabet() throws IOException {
+        Alphabet bytes = Alphabet.bytes();
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("R", new Permutation("", bytes)));
+        Machine mach = new Machine(bytes, 1, 0, all);
+        assertTrue(CompiledConfig.read(compile(mach)).alphabet().isBytes());
+        assertFalse(CompiledConfig.read(compile(navalMachine())).alphabet()
+                    .isBytes());
+    }
+
+    @Test
+    public void checkNotCompiled() {
+        assertFalse(CompiledConfig.isCompiled(ByteBuffer.wrap(
+            "ABCD 3 1".getBytes())));
+    }
+
+}
@@ -0,0 +1,130 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Reads the Enigma machine described by a configuration file, in the
+ *  format specified in the assignment, in the hexadecimal notation of
+ *  *BYTES configurations, or compiled by CompiledConfig.
+ *  @author Lisa Sam Wang
+ */
+class ConfigReader {
+
+    /** A reader of the configuration file named NAME.  *BYTES
+     *  configurations are accepted iff BYTESALLOWED. */
+    ConfigReader(String name, boolean bytesAllowed) {
+        _name = name;
+        _bytesAllowed = bytesAllowed;
+    }
+
+    /** Return an Enigma machine described by the contents of my
+     *  configuration file, which is memory-mapped.  If it is a compiled
+     *  configuration, it is loaded by CompiledConfig.  Otherwise, only
+     *  the header of the file is parsed here; each rotor is parsed by
+     *  makeRotor when first named (see RotorCatalog). */
+    Machine read() {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(Paths.get(_name),
+                                                    StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", _name);
+        }
+        if (CompiledConfig.isCompiled(data)) {
+            Machine enigma = CompiledConfig.read(data);
+            _alphabet = enigma.alphabet();
+            _byteConfig = _alphabet.isBytes();
+            checkByteConfig();
+            return enigma;
+        }
+        RotorCatalog catalog =
+            new RotorCatalog(data, HEADER_TOKENS, Charset.defaultCharset(),
+                             this::makeRotor);
+        List<String> header = catalog.header();
+        if (header.isEmpty()) {
+            throw error("configuration file truncated");
+        }
+        String alphabet = header.get(0);
+        _byteConfig = alphabet.equals(BYTES_MARKER);
+        checkByteConfig();
+        if (_byteConfig) {
+            _alphabet = Alphabet.bytes();
+        } else if (alphabet.contains("(")
+                || alphabet.contains(")") || alphabet.contains("*")) {
+            throw new EnigmaException("Invalid configuration");
+        } else {
+            _alphabet = new Alphabet(alphabet);
+        }
+        int numRotors = headerInt(header, 1, "Need numRotors config");
+        int pawls = headerInt(header, 2, "Need pawls config");
+        return new Machine(_alphabet, numRotors, pawls, catalog);
+    }
+
+    /** Check that a *BYTES configuration, if _byteConfig, is allowed. */
+    private void checkByteConfig() {
+        if (_byteConfig && !_bytesAllowed) {
+            throw error("*BYTES configurations require --bytes");
+        }
+    }
+
+    /** Return the integer HEADER[K], or throw an error with message MSG
+     *  if there is none. */
+    private static int headerInt(List<String> header, int k, String msg) {
+        try {
+            return Integer.parseInt(header.get(k));
+        } catch (NumberFormatException | IndexOutOfBoundsException excp) {
+            throw error(msg);
+        }
+    }
+
+    /** Return the rotor named NAME of type TYPE (M followed by notches,
+     *  N, or R) whose permutation of _alphabet is given by CYCLES. */
+    private Rotor makeRotor(String name, String type, String cycles) {
+        Permutation perm = _byteConfig
+            ? ByteProcessor.hexPermutation(cycles, _alphabet)
+            : new Permutation(cycles, _alphabet);
+        if (type.charAt(0) == 'M') {
+            String notched = type.substring(1);
+            return new MovingRotor(
+                    name, perm,
+                    _byteConfig ? ByteProcessor.hexChars(notched) : notched);
+        } else if (type.charAt(0) == 'N') {
+            return new FixedRotor(name, perm);
+        } else if (type.charAt(0) == 'R') {
+            return new Reflector(name, perm);
+        } else {
+            throw new EnigmaException("Invalid rotor type!");
+        }
+    }
+
+    /** First token of a configuration file whose alphabet is the byte
+     *  values. */
+    private static final String BYTES_MARKER = "*BYTES";
+
+    /** Number of tokens in a configuration file before its rotors:
+     *  the alphabet, the number of slots, and the number of pawls. */
+    private static final int HEADER_TOKENS = 3;
+
+    /** Name of the configuration file. */
+    private final String _name;
+
+    /** True iff *BYTES configurations are accepted. */
+    private final boolean _bytesAllowed;
+
+    /** True iff the configuration file describes a byte alphabet. */
+    private boolean _byteConfig;
+
+    /** Alphabet of the machine read. */
+    private Alphabet _alphabet;
+}
@@ -0,0 +1,153 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.Scanner;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Attacks on the ciphertext read from an input, printing the keys
+ *  found, one per line.
+ *  @author Lisa Sam Wang
+ */
+class Cryptanalysis {
+
+    /** Attacks on the ciphertext in INPUT with machines configured like
+     *  MACHINE, which print their results to OUTPUT.  Attacks on a single
+     *  rotor order call SETUP with the first settings line of INPUT to
+     *  choose it. */
+    Cryptanalysis(Machine machine, Consumer<String> setUp, Scanner input,
+                  PrintStream output) {
+        _machine = machine;
+        _setUp = setUp;
+        _input = input;
+        _output = output;
+    }
+
+    /** Print the keys of my machine under which the ciphertext in my
+     *  input decrypts to CRIB at OFFSET, reporting progress to the
+     *  standard error. */
+    void search(String crib, int offset) {
+        String cipher = readAllCiphertext();
+        KeySearch search = new KeySearch(_machine);
+        search.setProgress(System.err::println, PROGRESS_INTERVAL);
+        for (KeySearch.Candidate key : search.search(cipher, crib, offset)) {
+            _output.println(key);
+        }
+    }
+
+    /** As for search, but divide the search among WORKERS worker
+     *  processes on configuration file CONFIG (see SearchCoordinator),
+     *  checkpointing to the file named CHECKPOINT if it is not null. */
+    void coordinate(String config, int workers, String checkpoint,
+                    String crib, int offset) {
+        String cipher = readAllCiphertext();
+        long numKeys = new KeySearch(_machine).numCandidates();
+        SearchCoordinator coordinator =
+            new SearchCoordinator(SearchCoordinator.javaCommand(), workers);
+        if (checkpoint != null) {
+            coordinator.setCheckpoint(new File(checkpoint),
+                                      CHECKPOINT_INTERVAL);
+        }
+        coordinator.setProgress(System.err::println);
+        for (String key : coordinator.run(config, numKeys, cipher,
+                                          crib, offset)) {
+            _output.println(key);
+        }
+    }
+
+    /** Print the stops of a bombe for the rotor order of the first
+     *  settings line of my input on the ciphertext in the rest of my
+     *  input, with crib CRIB at OFFSET. */
+    void bombe(String crib, int offset) {
+        String cipher = readCiphertext();
+        Bombe bombe = new Bombe(_machine.spec());
+        for (Bombe.Stop stop : bombe.run(cipher, crib, offset)) {
+            _output.println(rotorNames() + " " + stop);
+        }
+    }
+
+    /** Print the key found for the rotor order of the first settings line
+     *  of my input by a ciphertext-only attack on the rest of my input,
+     *  scored by the quadgrams of the text in the file named CORPUS, and
+     *  the resulting decryption. */
+    void hillClimb(String corpus) {
+        String cipher = readCiphertext();
+        Quadgrams quads;
+        try (Reader text = new FileReader(corpus)) {
+            quads = new Quadgrams(_machine.alphabet(), text);
+        } catch (IOException excp) {
+            throw error("could not read %s", corpus);
+        }
+        HillClimber.Result key =
+            new HillClimber(_machine.spec(), quads).attack(cipher);
+        _output.println((rotorNames() + " " + key.setting() + " "
+                         + key.plugboard()).trim());
+        TextProcessor.printMessageLine(_output, key.plaintext());
+    }
+
+    /** Set up my machine by the first settings line of my input, and
+     *  return the rest of my input, less any other settings lines, as
+     *  one ciphertext without line breaks. */
+    private String readCiphertext() {
+        boolean configured = false;
+        StringBuilder cipher = new StringBuilder();
+        while (_input.hasNextLine()) {
+            String line = _input.nextLine();
+            if (!line.startsWith("*")) {
+                cipher.append(line);
+            } else if (!configured) {
+                _setUp.accept(line);
+                configured = true;
+            }
+        }
+        if (!configured) {
+            throw error("Invalid setting");
+        }
+        return cipher.toString();
+    }
+
+    /** Return the start of a settings line naming the rotors of my
+     *  machine. */
+    private String rotorNames() {
+        StringBuilder names = new StringBuilder("*");
+        for (Rotor rotor : _machine.myRotors()) {
+            names.append(' ').append(rotor.name());
+        }
+        return names.toString();
+    }
+
+    /** Return the lines of my input other than settings lines, joined. */
+    private String readAllCiphertext() {
+        StringBuilder cipher = new StringBuilder();
+        while (_input.hasNextLine()) {
+            String line = _input.nextLine();
+            if (!line.startsWith("*")) {
+                cipher.append(line);
+            }
+        }
+        return cipher.toString();
+    }
+
+    /** Number of keys tested between progress reports of a search. */
+    private static final long PROGRESS_INTERVAL = 1L << 26;
+
+    /** Milliseconds between checkpoints of a coordinated search. */
+    private static final long CHECKPOINT_INTERVAL = 10000;
+
+    /** The machine attacked. */
+    private final Machine _machine;
+
+    /** Sets up _machine by a settings line. */
+    private final Consumer<String> _setUp;
+
+    /** Source of the ciphertext. */
+    private final Scanner _input;
+
+    /** Destination of the keys found. */
+    private final PrintStream _output;
+}
@@ -0,0 +1,165 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import static enigma.EnigmaException.*;
+
+/** A client of an EnigmaServer, which has it convert settings lines and
+ *  messages in the format of TextProcessor.
+ *  @author Lisa Sam Wang
+ */
+class EnigmaClient {
+
+    /** A client of the server at ADDRESS (see EnigmaServer.address). */
+    EnigmaClient(String address) {
+        _address = address;
+    }
+
+    /** Send the messages in INPUT to my server, and print its results to
+     *  OUTPUT, as TextProcessor does.  Each settings line and the message
+     *  lines that follow it make one request.  Requests are sent by a
+     *  second thread, without waiting for the responses. */
+    void process(Scanner input, PrintStream output) {
+        SocketChannel channel;
+        try {
+            channel = EnigmaServer.connect(_address);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not connect to %s", _address);
+        }
+        ArrayBlockingQueue<List<String>> sent =
+            new ArrayBlockingQueue<>(EnigmaServer.PIPELINE_DEPTH);
+        _trailing = 0;
+        RuntimeException[] failure = new RuntimeException[1];
+        Thread sender = new Thread(() -> {
+            try {
+                sendRequests(channel, input, sent);
+            } catch (RuntimeException excp) {
+                failure[0] = excp;
+            }
+        });
+        sender.start();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                 EnigmaServer.input(channel), StandardCharsets.UTF_8))) {
+            for (List<String> lines = sent.take(); lines != DONE;
+                 lines = sent.take()) {
+                List<String> results = EnigmaServer.response(in.readLine());
+                for (int i = 0; i < lines.size(); i += 1) {
+                    if (lines.get(i).isEmpty()) {
+                        output.println();
+                    } else {
+                        TextProcessor.printMessageLine(output,
+                                                       results.get(i));
+                    }
+                }
+            }
+            for (int i = 0; i < _trailing; i += 1) {
+                output.println();
+            }
+            sender.join();
+        } catch (IOException | IndexOutOfBoundsException excp) {
+            throw error("bad response from %s", _address);
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException excp) {
+                throw error("could not close connection to %s", _address);
+            }
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /** Send a request to CHANNEL for each settings line of INPUT and
+     *  the message lines that follow it, and put the message lines of
+     *  each in SENT, followed by DONE.  As in TextProcessor, the lines
+     *  after the last line with anything but white space are not sent,
+     *  but counted in _trailing, and a message before the first settings
+     *  line is an error. */
+    private void sendRequests(SocketChannel channel, Scanner input,
+                              ArrayBlockingQueue<List<String>> sent) {
+        try {
+            Writer out = new OutputStreamWriter(
+                EnigmaServer.output(channel), StandardCharsets.UTF_8);
+            try {
+                String settings = null;
+                boolean first = true, unset = false;
+                ArrayList<String> lines = new ArrayList<>();
+                ArrayList<String> blanks = new ArrayList<>();
+                while (true) {
+                    String line =
+                        input.hasNextLine() ? input.nextLine() : null;
+                    if (line != null && !line.isBlank()) {
+                        if (unset) {
+                            throw error("Invalid setting");
+                        }
+                        lines.addAll(blanks);
+                        blanks.clear();
+                    }
+                    if (settings != null
+                        && (line == null ? !lines.isEmpty()
+                            : line.startsWith("*"))) {
+                        sent.put(lines);
+                        out.write(EnigmaServer.request(settings, lines));
+                        out.write('\n');
+                        lines = new ArrayList<>();
+                    }
+                    if (line == null) {
+                        break;
+                    } else if (first && !line.startsWith("*")) {
+                        unset = true;
+                    } else if (line.startsWith("*")) {
+                        settings = line;
+                    } else if (line.isBlank()) {
+                        blanks.add(line);
+                    } else {
+                        lines.add(line);
+                    }
+                    first = false;
+                    if (!input.hasNextLine()
+                        || sent.remainingCapacity() == 0) {
+                        out.flush();
+                    }
+                }
+                out.flush();
+                _trailing = blanks.size();
+                if (unset) {
+                    throw error("You did not put a setting!");
+                }
+            } finally {
+                channel.shutdownOutput();
+                sent.put(DONE);
+            }
+        } catch (IOException excp) {
+            throw error("could not send to %s", _address);
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        }
+    }
+
+    /** Marks the end of the requests sent by sendRequests. */
+    private static final List<String> DONE = new ArrayList<>();
+
+    /** Address of the server. */
+    private final String _address;
+
+    /** Number of lines at the end of the input of the last call to
+     *  process that are printed as empty lines. */
+    private int _trailing;
+}
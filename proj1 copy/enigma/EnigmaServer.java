@@ -0,0 +1,316 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import static enigma.EnigmaException.*;
+
+/** A resident service that converts messages for clients on the same
+ *  host, so that they need not start a JVM or read a configuration.  It
+ *  listens on a Unix-domain socket, or on a TCP port of the loopback
+ *  address, and accepts any number of connections.
+ *
+ *  The protocol consists of lines in UTF-8.  Each request is
+ *    settings-line TAB message-line TAB message-line ...
+ *  asking that the message lines, as consecutive lines of one message,
+ *  be converted by a machine set up by the settings line.  The response
+ *  to each is either
+ *    OK TAB converted-line TAB converted-line ...
+ *  with the converted lines, less blanks, in the same order, or
+ *    ERROR TAB description
+ *  A client may send any number of requests without waiting; the
+ *  responses on each connection come in the order of its requests.
+ *  Requests are converted by a pool of worker threads, each with its own
+ *  machine, so that requests from one connection may be converted
+ *  concurrently.
+ *  @author Lisa Sam Wang
+ */
+class EnigmaServer {
+
+    /** A server that converts messages with machines made by
+     *  PROTOTYPE.fresh(), calling SETUP with a machine and a settings
+     *  line to set it up, in WORKERS worker threads.  SETUP may be called
+     *  from several threads at once. */
+    EnigmaServer(Machine prototype, BiConsumer<Machine, String> setUp,
+                 int workers) {
+        _setUp = setUp;
+        _machines = ThreadLocal.withInitial(prototype::fresh);
+        _workers = Executors.newFixedThreadPool(workers);
+    }
+
+    /** Return the address denoted by ADDRESS: the TCP port of the
+     *  loopback address if it is a numeral, and otherwise the path of a
+     *  Unix-domain socket. */
+    static SocketAddress address(String address) {
+        if (address.matches("[0-9]+")) {
+            try {
+                return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                             Integer.parseInt(address));
+            } catch (IllegalArgumentException excp) {
+                throw error("bad port: %s", address);
+            }
+        }
+        return UnixDomainSocketAddress.of(address);
+    }
+
+    /** Return a channel listening on ADDRESS (as for address()). */
+    static ServerSocketChannel listen(String address) throws IOException {
+        SocketAddress addr = address(address);
+        ServerSocketChannel server =
+            addr instanceof UnixDomainSocketAddress
+            ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+            : ServerSocketChannel.open();
+        server.bind(addr);
+        return server;
+    }
+
+    /** Return a channel connected to the server at ADDRESS (as for
+     *  address()). */
+    static SocketChannel connect(String address) throws IOException {
+        return SocketChannel.open(address(address));
+    }
+
+    /** Listen on ADDRESS (as for address()) and serve the connections
+     *  to it, as for serve(ServerSocketChannel). */
+    void serve(String address) {
+        ServerSocketChannel server;
+        try {
+            server = listen(address);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not listen on %s", address);
+        }
+        serve(server);
+    }
+
+    /** Accept connections from SERVER and serve each on its own threads,
+     *  until SERVER is closed.  Then stop the workers. */
+    void serve(ServerSocketChannel server) {
+        try {
+            while (true) {
+                SocketChannel client = server.accept();
+                Thread thread = new Thread(() -> serve(client));
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (IOException excp) {
+            if (server.isOpen()) {
+                throw error("could not accept: %s", excp.getMessage());
+            }
+        } finally {
+            _workers.shutdownNow();
+        }
+    }
+
+    /** Read requests from CLIENT and hand them to the workers, while a
+     *  second thread writes their responses in order. */
+    private void serve(SocketChannel client) {
+        ArrayBlockingQueue<Future<String>> pending =
+            new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+        Thread reader = Thread.currentThread();
+        Thread writer = new Thread(() -> respond(client, pending, reader));
+        writer.setDaemon(true);
+        writer.start();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                 input(client), StandardCharsets.UTF_8))) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                String request = line;
+                pending.put(_workers.submit(() -> convert(request)));
+            }
+        } catch (IOException | InterruptedException excp) {
+            writer.interrupt();
+        } finally {
+            try {
+                if (writer.isAlive()) {
+                    pending.put(DONE);
+                }
+                writer.join();
+                client.close();
+            } catch (IOException | InterruptedException excp) {
+                return;
+            }
+        }
+    }
+
+    /** Write the response to each request in PENDING to CLIENT, in
+     *  order, until DONE.  If CLIENT fails, stop READER, which is putting
+     *  requests in PENDING. */
+    private void respond(SocketChannel client,
+                         ArrayBlockingQueue<Future<String>> pending,
+                         Thread reader) {
+        try (Writer out = new OutputStreamWriter(
+                 output(client), StandardCharsets.UTF_8)) {
+            for (Future<String> response = pending.take(); response != DONE;
+                 response = pending.take()) {
+                String text;
+                try {
+                    text = response.get();
+                } catch (ExecutionException excp) {
+                    text = ERROR + "\t" + excp.getCause();
+                }
+                out.write(text);
+                out.write('\n');
+                if (pending.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException excp) {
+            reader.interrupt();
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Return the response to REQUEST, converted by this thread's
+     *  machine. */
+    private String convert(String request) {
+        String[] fields = request.split("\t", -1);
+        Machine machine = _machines.get();
+        StringBuilder response = new StringBuilder(OK);
+        try {
+            _setUp.accept(machine, fields[0]);
+            for (int i = 1; i < fields.length; i += 1) {
+                response.append('\t').append(machine.convert(fields[i]));
+            }
+        } catch (EnigmaException excp) {
+            return ERROR + "\t" + excp.getMessage();
+        }
+        return response.toString();
+    }
+
+    /** Return a stream that reads from CHANNEL.  Unlike the streams of
+     *  Channels, it may be read while another thread writes to CHANNEL.
+     *  Closing it shuts down only the input side of CHANNEL. */
+    static InputStream input(SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & BYTE_MASK;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return channel.read(ByteBuffer.wrap(b, off, len));
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (channel.isOpen()) {
+                    channel.shutdownInput();
+                }
+            }
+        };
+    }
+
+    /** Return a stream that writes to CHANNEL.  Unlike the streams of
+     *  Channels, it may be written while another thread reads from
+     *  CHANNEL.  Closing it shuts down only the output side of CHANNEL.
+     */
+    static OutputStream output(SocketChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len)
+                throws IOException {
+                ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (channel.isOpen()) {
+                    channel.shutdownOutput();
+                }
+            }
+        };
+    }
+
+    /** Return the request that SETTINGS be followed by the message lines
+     *  LINES. */
+    static String request(String settings, List<String> lines) {
+        StringBuilder request = new StringBuilder(settings);
+        for (String line : lines) {
+            if (line.indexOf('\t') >= 0 || settings.indexOf('\t') >= 0) {
+                throw error("tab in message");
+            }
+            request.append('\t').append(line);
+        }
+        return request.toString();
+    }
+
+    /** Return the converted lines of RESPONSE, or throw an exception
+     *  describing its error. */
+    static List<String> response(String response) {
+        if (response == null) {
+            throw error("server closed the connection");
+        }
+        String[] fields = response.split("\t", -1);
+        if (fields[0].equals(ERROR) && fields.length > 1) {
+            throw error("%s", fields[1]);
+        } else if (!fields[0].equals(OK)) {
+            throw error("bad response: %s", response);
+        }
+        return new ArrayList<>(Arrays.asList(fields).subList(1,
+                                                             fields.length));
+    }
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Tag of a successful response. */
+    static final String OK = "OK";
+
+    /** Tag of a failed response. */
+    static final String ERROR = "ERROR";
+
+    /** Largest number of requests on one connection that are being
+     *  converted or waiting to be written. */
+    static final int PIPELINE_DEPTH = 1024;
+
+    /** Marks the end of the responses of a connection. */
+    private static final Future<String> DONE =
+        CompletableFuture.completedFuture(null);
+
+    /** Sets up a machine by a settings line. */
+    private final BiConsumer<Machine, String> _setUp;
+
+    /** The machine of each worker thread. */
+    private final ThreadLocal<Machine> _machines;
+
+    /** Converts requests. */
+    private final ExecutorService _workers;
+}
@@ -0,0 +1,125 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaServer class.
+ *  @author Lisa Sam Wang
+ */
+public class EnigmaServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkPipelinedRequests() throws Exception {
+        Path dir = Files.createTempDirectory("enigma");
+        String address = dir.resolve("socket").toString();
+        ServerSocketChannel listener = EnigmaServer.listen(address);
+        EnigmaServer server = new EnigmaServer(navalMachine(),
+                                               TestUtils::setUpNaval, 2);
+        Thread serving = new Thread(() -> server.serve(listener));
+        serving.start();
+        String[] settings = { "* B Beta III IV I AXLE",
+                              "* B Beta I II III QRST" };
+        List<String> lines = Arrays.asList("HELLO WORLD", "", "AGAIN");
+        int n = 200;
+        try (SocketChannel channel = EnigmaServer.connect(address)) {
+            Writer out = new OutputStreamWriter(EnigmaServer.output(channel),
+                                                StandardCharsets.UTF_8);
+            for (int i = 0; i < n; i += 1) {
+                out.write(EnigmaServer.request(settings[i % 2], lines));
+                out.write('\n');
+            }
+            out.write("* B Beta V IV I AAAA\tX\n");
+            out.close();
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                EnigmaServer.input(channel), StandardCharsets.UTF_8));
+            for (int i = 0; i < n; i += 1) {
+                Machine mach = navalMachine();
+                setUpNaval(mach, settings[i % 2]);
+                ArrayList<String> expected = new ArrayList<>();
+                for (String line : lines) {
+                    expected.add(mach.convert(line));
+                }
+                assertEquals(expected,
+                             EnigmaServer.response(in.readLine()));
+            }
+            assertEquals("ERROR\tBad rotor name", in.readLine());
+            assertNull(in.readLine());
+        } finally {
+            listener.close();
+            serving.join();
+            Files.delete(dir.resolve("socket"));
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void checkClientSameAsText() throws Exception {
+        Path dir = Files.createTempDirectory("enigma");
+        String address = dir.resolve("socket").toString();
+        ServerSocketChannel listener = EnigmaServer.listen(address);
+        EnigmaServer server = new EnigmaServer(navalMachine(),
+                                               TestUtils::setUpNaval, 2);
+        Thread serving = new Thread(() -> server.serve(listener));
+        serving.start();
+        try {
+            for (String input : StreamingProcessorTest.INPUTS) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                String error = "";
+                try {
+                    new EnigmaClient(address).process(
+                        new Scanner(input), new PrintStream(out, true));
+                } catch (EnigmaException excp) {
+                    error = "|" + excp.getMessage();
+                }
+                assertEquals(msg("checkClientSameAsText", "input %s", input),
+                             StreamingProcessorTest.text(input),
+                             out + error);
+            }
+        } finally {
+            listener.close();
+            serving.join();
+            Files.delete(dir.resolve("socket"));
+            Files.delete(dir);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkErrorResponse() {
+        EnigmaServer.response("ERROR\tBad rotor name");
+    }
+
+    @Test
+    public void checkAddress() {
+        assertTrue(EnigmaServer.address("4417").toString()
+                   .endsWith(":4417"));
+        assertFalse(EnigmaServer.address("/tmp/x.sock").toString()
+                    .endsWith(":4417"));
+    }
+
+}
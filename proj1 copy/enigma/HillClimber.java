@@ -0,0 +1,482 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack on a machine whose rotor order is known but
+ *  whose starting settings and plugboard are not.  The first phase
+ *  decrypts the ciphertext at every starting setting without a plugboard
+ *  and keeps the settings whose decryptions have the highest index of
+ *  coincidence, since those are least like random text.  The second phase
+ *  hill-climbs the plugboard from each of these settings, adding,
+ *  removing, and exchanging pairs whenever that improves the quadgram
+ *  score of the decryption, with several randomly started climbs run in
+ *  parallel.  The keystream at each position is computed once per
+ *  setting.  A change to the plugboard re-decrypts only the positions
+ *  whose ciphertext letter or scrambler output it touches, found from
+ *  per-letter lists of positions, and rescores only the quadgrams around
+ *  the decrypted characters that change.
+ *  @author Lisa Sam Wang
+ */
+class HillClimber {
+
+    /** An attack on the rotor order of SPEC (whose plugboard is ignored),
+     *  scoring decryptions with QUADGRAMS. */
+    HillClimber(MachineSpec spec, Quadgrams quadgrams) {
+        _alphabet = spec.alphabet();
+        if (quadgrams.alphabet() != _alphabet) {
+            throw error("quadgrams are for a different alphabet");
+        }
+        _size = _alphabet.size();
+        _spec = spec.withPlugboard(new Permutation("", _alphabet));
+        _quadgrams = quadgrams;
+    }
+
+    /** Keep the best CANDIDATES settings from the first phase, and run
+     *  RESTARTS climbs in the second phase, each from one of those
+     *  settings in turn, beginning with a random plugboard of at most
+     *  PAIRS pairs (none for the first climb from each setting).  Random
+     *  choices are made from SEED. */
+    void setSearch(int candidates, int restarts, int pairs, long seed) {
+        _candidates = candidates;
+        _restarts = restarts;
+        _pairs = pairs;
+        _seed = seed;
+    }
+
+    /** Return the best key found for CIPHERTEXT, ignoring blanks. */
+    Result attack(String ciphertext) {
+        String text = ciphertext.replace(" ", "");
+        if (text.length() < Quadgrams.QUAD) {
+            throw error("ciphertext too short");
+        }
+        _cipher = new int[text.length()];
+        for (int i = 0; i < _cipher.length; i += 1) {
+            _cipher[i] = _alphabet.toInt(text.charAt(i));
+        }
+        int[] counts = new int[_size];
+        for (int c : _cipher) {
+            counts[c] += 1;
+        }
+        _cipherAt = new int[_size][];
+        for (int c = 0; c < _size; c += 1) {
+            _cipherAt[c] = new int[counts[c]];
+            counts[c] = 0;
+        }
+        for (int i = 0; i < _cipher.length; i += 1) {
+            int c = _cipher[i];
+            _cipherAt[c][counts[c]] = i;
+            counts[c] += 1;
+        }
+        List<int[]> settings = bestSettings();
+        ArrayList<Climb> climbs = new ArrayList<>();
+        for (int r = 0; r < _restarts; r += 1) {
+            climbs.add(new Climb(settings.get(r % settings.size()),
+                                 r < settings.size() ? 0 : _pairs,
+                                 _seed + r));
+        }
+        Result best = null;
+        for (Climb climb : ForkJoinTask.invokeAll(climbs)) {
+            Result result = climb.join();
+            if (best == null || result._score > best._score) {
+                best = result;
+            }
+        }
+        return best;
+    }
+
+    /** The outcome of an attack. */
+    class Result {
+
+        /** A result with rotor settings SETTINGS (one per slot), plugboard
+         *  partners PARTNERS, quadgram score SCORE, and decryption PLAIN
+         *  (as indices). */
+        Result(int[] settings, int[] partners, double score, int[] plain) {
+            _settings = settings;
+            _partners = partners;
+            _score = score;
+            _plain = plain;
+        }
+
+        /** Return the starting settings, as for Machine.setRotors. */
+        String setting() {
+            char[] result = new char[_settings.length - 1];
+            for (int k = 1; k < _settings.length; k += 1) {
+                result[k - 1] = _alphabet.toChar(_settings[k]);
+            }
+            return new String(result);
+        }
+
+        /** Return the plugboard in cycle notation. */
+        String plugboard() {
+            StringBuilder cycles = new StringBuilder();
+            for (int a = 0; a < _size; a += 1) {
+                if (_partners[a] > a) {
+                    cycles.append('(').append(_alphabet.toChar(a))
+                        .append(_alphabet.toChar(_partners[a])).append(')');
+                }
+            }
+            return cycles.toString();
+        }
+
+        /** Return the quadgram score of the decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Return the decryption. */
+        String plaintext() {
+            char[] result = new char[_plain.length];
+            for (int i = 0; i < result.length; i += 1) {
+                result[i] = _alphabet.toChar(_plain[i]);
+            }
+            return new String(result);
+        }
+
+        /** The setting of each slot. */
+        private final int[] _settings;
+        /** The plugboard partner of each character. */
+        private final int[] _partners;
+        /** Quadgram score of _plain. */
+        private final double _score;
+        /** The decryption. */
+        private final int[] _plain;
+    }
+
+    /** Return the _candidates starting settings at which the ciphertext,
+     *  decrypted without a plugboard, has the highest index of
+     *  coincidence, best first. */
+    private List<int[]> bestSettings() {
+        int numRotors = _spec.numRotors();
+        long positions = 1;
+        for (int k = 1; k < numRotors; k += 1) {
+            positions *= _size;
+        }
+        KeystreamCache cache = null;
+        if (KeystreamCache.usable(_spec, CACHE_BUDGET)) {
+            cache = new KeystreamCache(_spec, CACHE_BUDGET);
+        }
+        PriorityQueue<long[]> best =
+            new PriorityQueue<>((x, y) -> Long.compare(x[0], y[0]));
+        MachineState state = _spec.newState();
+        state.useCache(cache);
+        int[] start = new int[numRotors];
+        int[] counts = new int[_size];
+        for (long posn = 0; posn < positions; posn += 1) {
+            long p = posn;
+            for (int k = numRotors - 1; k > 0; k -= 1) {
+                start[k] = (int) (p % _size);
+                p /= _size;
+            }
+            state.set(start);
+            Arrays.fill(counts, 0);
+            for (int c : _cipher) {
+                counts[state.convert(c)] += 1;
+            }
+            long coincidences = 0;
+            for (int n : counts) {
+                coincidences += (long) n * (n - 1);
+            }
+            if (best.size() < _candidates) {
+                best.add(new long[] { coincidences, posn });
+            } else if (coincidences > best.peek()[0]) {
+                best.poll();
+                best.add(new long[] { coincidences, posn });
+            }
+        }
+        ArrayList<int[]> result = new ArrayList<>();
+        while (!best.isEmpty()) {
+            long p = best.poll()[1];
+            int[] settings = new int[numRotors];
+            for (int k = numRotors - 1; k > 0; k -= 1) {
+                settings[k] = (int) (p % _size);
+                p /= _size;
+            }
+            result.add(0, settings);
+        }
+        return result;
+    }
+
+    /** One hill climb of the plugboard from fixed rotor settings. */
+    private class Climb extends RecursiveTask<Result> {
+
+        /** A climb from rotor settings SETTINGS (one per slot), starting
+         *  with a random plugboard of PAIRS pairs chosen with SEED. */
+        Climb(int[] settings, int pairs, long seed) {
+            _start = settings;
+            _initialPairs = pairs;
+            _random = new Random(seed);
+        }
+
+        @Override
+        protected Result compute() {
+            int len = _cipher.length;
+            _stream = new int[len * _size];
+            int[] settings = _start.clone();
+            for (int i = 0; i < len; i += 1) {
+                _spec.step(settings);
+                for (int c = 0; c < _size; c += 1) {
+                    _stream[i * _size + c] = _spec.scramble(c, settings);
+                }
+            }
+            _plug = new int[_size];
+            for (int a = 0; a < _size; a += 1) {
+                _plug[a] = a;
+            }
+            for (int n = 0; n < _initialPairs; n += 1) {
+                int a = _random.nextInt(_size), b = _random.nextInt(_size);
+                if (_plug[a] == a && _plug[b] == b) {
+                    connect(a, b);
+                }
+            }
+            _out = new int[len];
+            _outHead = new int[_size];
+            _outNext = new int[len];
+            _outPrev = new int[len];
+            Arrays.fill(_outHead, -1);
+            _plain = new int[len];
+            for (int i = 0; i < len; i += 1) {
+                _out[i] = _stream[i * _size + _plug[_cipher[i]]];
+                link(i);
+                _plain[i] = _plug[_out[i]];
+            }
+            _trial = _plain.clone();
+            _changed = new int[len];
+            _marks = new int[len];
+            _quadMarks = new int[len];
+            _score = _quadgrams.score(_plain, 0, len);
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < _size; a += 1) {
+                    for (int b = a + 1; b < _size; b += 1) {
+                        improved |= tryChange(a, b);
+                    }
+                }
+            }
+            return new Result(_start, _plug.clone(), _score, _plain);
+        }
+
+        /** Try the plugboard with A and B steckered together (removing any
+         *  pairs containing them), or if they already are, with neither
+         *  steckered.  Keep the change iff it improves the score, and
+         *  return true iff it was kept. */
+        private boolean tryChange(int a, int b) {
+            int pa = _plug[a], pb = _plug[b];
+            boolean paired = pa == b;
+            _stamp += 1;
+            _numChanged = 0;
+            touchLetter(a);
+            touchLetter(b);
+            touchLetter(pa);
+            touchLetter(pb);
+            disconnect(a);
+            disconnect(b);
+            if (!paired) {
+                connect(a, b);
+            }
+            for (int k = 0; k < _numChanged; k += 1) {
+                int i = _changed[k];
+                _trial[i] = _plug[_stream[i * _size + _plug[_cipher[i]]]];
+            }
+            double score = _score + rescore();
+            if (score > _score + EPSILON) {
+                _score = score;
+                for (int k = 0; k < _numChanged; k += 1) {
+                    int i = _changed[k];
+                    _plain[i] = _trial[i];
+                    int out = _stream[i * _size + _plug[_cipher[i]]];
+                    if (out != _out[i]) {
+                        unlink(i);
+                        _out[i] = out;
+                        link(i);
+                    }
+                }
+                return true;
+            }
+            for (int k = 0; k < _numChanged; k += 1) {
+                int i = _changed[k];
+                _trial[i] = _plain[i];
+            }
+            disconnect(a);
+            disconnect(b);
+            connect(a, pa);
+            connect(b, pb);
+            return false;
+        }
+
+        /** Add to _changed the positions whose ciphertext letter or
+         *  scrambler output is X, which are the only ones whose
+         *  decryption can change when the partner of X does. */
+        private void touchLetter(int x) {
+            for (int i : _cipherAt[x]) {
+                touch(i);
+            }
+            for (int i = _outHead[x]; i >= 0; i = _outNext[i]) {
+                touch(i);
+            }
+        }
+
+        /** Add position I to _changed, if it is not already there. */
+        private void touch(int i) {
+            if (_marks[i] != _stamp) {
+                _marks[i] = _stamp;
+                _changed[_numChanged] = i;
+                _numChanged += 1;
+            }
+        }
+
+        /** Return the change in score from _plain to _trial, which differ
+         *  at most at the positions in _changed, rescoring once each of the
+         *  quadgrams that contain a character that differs. */
+        private double rescore() {
+            double delta = 0;
+            int last = _plain.length - Quadgrams.QUAD;
+            for (int k = 0; k < _numChanged; k += 1) {
+                int i = _changed[k];
+                if (_plain[i] == _trial[i]) {
+                    continue;
+                }
+                int from = Math.max(i - Quadgrams.QUAD + 1, 0);
+                for (int j = from; j <= i && j <= last; j += 1) {
+                    if (_quadMarks[j] != _stamp) {
+                        _quadMarks[j] = _stamp;
+                        delta += _quadgrams.score(_trial, j, j + 1)
+                            - _quadgrams.score(_plain, j, j + 1);
+                    }
+                }
+            }
+            return delta;
+        }
+
+        /** Add position I to the list of positions whose scrambler output
+         *  is _out[I]. */
+        private void link(int i) {
+            int head = _outHead[_out[i]];
+            _outNext[i] = head;
+            _outPrev[i] = -1;
+            if (head >= 0) {
+                _outPrev[head] = i;
+            }
+            _outHead[_out[i]] = i;
+        }
+
+        /** Remove position I from the list of positions whose scrambler
+         *  output is _out[I]. */
+        private void unlink(int i) {
+            if (_outPrev[i] >= 0) {
+                _outNext[_outPrev[i]] = _outNext[i];
+            } else {
+                _outHead[_out[i]] = _outNext[i];
+            }
+            if (_outNext[i] >= 0) {
+                _outPrev[_outNext[i]] = _outPrev[i];
+            }
+        }
+
+        /** Stecker A and B together. */
+        private void connect(int a, int b) {
+            _plug[a] = b;
+            _plug[b] = a;
+        }
+
+        /** Remove the pair containing A, if any. */
+        private void disconnect(int a) {
+            _plug[_plug[a]] = _plug[a];
+            _plug[a] = a;
+        }
+
+        /** The rotor settings of this climb. */
+        private final int[] _start;
+        /** Number of pairs in the initial plugboard. */
+        private final int _initialPairs;
+        /** Source of random choices. */
+        private final Random _random;
+        /** Entry i * _size + c is the conversion of c by the scrambler
+         *  at position i. */
+        private int[] _stream;
+        /** The plugboard partner of each character. */
+        private int[] _plug;
+        /** The decryption with the current plugboard. */
+        private int[] _plain;
+        /** A trial decryption, equal to _plain outside of _changed. */
+        private int[] _trial;
+        /** The scrambler output at each position with the current
+         *  plugboard. */
+        private int[] _out;
+        /** For each character x, the first position whose _out is x, or
+         *  -1 if none. */
+        private int[] _outHead;
+        /** The next and previous positions with the same _out as each
+         *  position, or -1 if none. */
+        private int[] _outNext, _outPrev;
+        /** The first _numChanged entries are the positions that the
+         *  current trial re-decrypts. */
+        private int[] _changed;
+        /** Number of entries of _changed in use. */
+        private int _numChanged;
+        /** _marks[i] is _stamp iff position i is in _changed. */
+        private int[] _marks;
+        /** _quadMarks[j] is _stamp iff the quadgram starting at j has
+         *  been rescored in the current trial. */
+        private int[] _quadMarks;
+        /** Number of the current trial. */
+        private int _stamp;
+        /** Quadgram score of _plain. */
+        private double _score;
+    }
+
+    /** Memory budget in bytes of the keystream tables of the first
+     *  phase. */
+    static final long CACHE_BUDGET = 1L << 26;
+
+    /** Smallest score improvement accepted. */
+    private static final double EPSILON = 1e-9;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** The rotor order attacked, with no plugboard. */
+    private final MachineSpec _spec;
+
+    /** Scores decryptions. */
+    private final Quadgrams _quadgrams;
+
+    /** Number of settings kept from the first phase. */
+    private int _candidates = DEFAULT_CANDIDATES;
+
+    /** Number of climbs in the second phase. */
+    private int _restarts = DEFAULT_RESTARTS;
+
+    /** Number of pairs in random initial plugboards. */
+    private int _pairs = DEFAULT_PAIRS;
+
+    /** Seed of random choices. */
+    private long _seed;
+
+    /** The ciphertext being attacked, as indices. */
+    private int[] _cipher;
+
+    /** For each character, the positions in _cipher at which it
+     *  appears. */
+    private int[][] _cipherAt;
+
+    /** Default value of _candidates. */
+    static final int DEFAULT_CANDIDATES = 4;
+
+    /** Default value of _restarts. */
+    static final int DEFAULT_RESTARTS = 16;
+
+    /** Default value of _pairs. */
+    static final int DEFAULT_PAIRS = 5;
+}
@@ -0,0 +1,87 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Quadgrams and HillClimber
+ *  classes.
+ *  @author Lisa Sam Wang
+ */
+public class HillClimberTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** English text used both as the corpus and as the message. */
+    private static final String TEXT =
+        "It was the best of times, it was the worst of times, it was the "
+        + "age of wisdom, it was the age of foolishness, it was the epoch "
+        + "of belief, it was the epoch of incredulity, it was the season "
+        + "of Light, it was the season of Darkness, it was the spring of "
+        + "hope, it was the winter of despair, we had everything before "
+        + "us, we had nothing before us, we were all going direct to "
+        + "Heaven, we were all going direct the other way; in short, the "
+        + "period was so far like the present period, that some of its "
+        + "noisiest authorities insisted on its being received, for good "
+        + "or for evil, in the superlative degree of comparison only. "
+        + "There were a king with a large jaw and a queen with a plain "
+        + "face, on the throne of England; there were a king with a large "
+        + "jaw and a queen with a fair face, on the throne of France.";
+
+    /** Return a 4-slot, 3-pawl machine with reflector B and naval rotors
+     *  I, II, and III at SETTING, with plugboard PLUGBOARD. */
+    private Machine machine(String setting, String plugboard) {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        all.add(new MovingRotor("I", new Permutation(NAVALA.get("I"), UPPER),
+                                "Q"));
+        all.add(new MovingRotor("II",
+                                new Permutation(NAVALA.get("II"), UPPER),
+                                "E"));
+        all.add(new MovingRotor("III",
+                                new Permutation(NAVALA.get("III"), UPPER),
+                                "V"));
+        Machine mach = new Machine(UPPER, 4, 3, all);
+        mach.insertRotors(new String[] { "B", "I", "II", "III" });
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation(plugboard, UPPER));
+        return mach;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkQuadgrams() throws IOException {
+        Quadgrams quads = new Quadgrams(UPPER, new StringReader(TEXT));
+        int[] english = new int[] { 19, 7, 4, 18 };
+        int[] noise = new int[] { 16, 25, 23, 9 };
+        assertTrue(quads.score(english, 0, 1) > quads.score(noise, 0, 1));
+        assertEquals(0.0, quads.score(english, 1, 4), 0.0);
+    }
+
+    @Test
+    public void checkAttack() throws IOException {
+        String plain = TEXT.toUpperCase().replaceAll("[^A-Z]", "");
+        String cipher = machine("FOX", "(AT)(EQ)(LM)").convert(plain);
+        Quadgrams quads = new Quadgrams(UPPER, new StringReader(TEXT));
+        HillClimber climber =
+            new HillClimber(machine("AAA", "").spec(), quads);
+        climber.setSearch(4, 8, 3, 1);
+        HillClimber.Result result = climber.attack(cipher);
+        assertEquals("FOX", result.setting());
+        assertEquals("(AT)(EQ)(LM)", result.plugboard());
+        assertEquals(plain, result.plaintext());
+    }
+
+}
@@ -0,0 +1,88 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Converts single messages, or parts of them, of a file of settings
+ *  lines and messages in the default charset, located by a MessageIndex
+ *  of the file, printing them as TextProcessor does.
+ *  @author Lisa Sam Wang
+ */
+class IndexedProcessor {
+
+    /** A processor of the messages in the file named INPUT, whose index
+     *  is the file named INDEX. */
+    IndexedProcessor(String input, String index) {
+        _inputName = input;
+        _indexName = index;
+    }
+
+    /** Write an index of the messages in my input to my index file. */
+    void index() {
+        try (FileChannel source = openInput()) {
+            MessageIndex.build(source, Charset.defaultCharset())
+                .write(Paths.get(_indexName));
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not write %s", _indexName);
+        }
+    }
+
+    /** Apply MACHINE to message K of my input, sending the result to
+     *  OUTPUT.  SETUP is called with the message's settings line to
+     *  configure MACHINE.  If TO is not negative, convert only characters
+     *  FROM through TO-1 of the message. */
+    void convert(int k, long from, long to, Machine machine,
+                 Consumer<String> setUp, PrintStream output) {
+        MessageIndex index;
+        try {
+            index = MessageIndex.read(Paths.get(_indexName),
+                                      Charset.defaultCharset());
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", _indexName);
+        }
+        try (FileChannel source = openInput()) {
+            index.check(source);
+            if (to >= 0) {
+                String part =
+                    index.convert(source, k, from, to, machine, setUp);
+                TextProcessor.printMessageLine(output, part);
+                return;
+            }
+            for (String line : index.convert(source, k, machine, setUp)) {
+                if (line.isEmpty()) {
+                    output.println();
+                } else {
+                    TextProcessor.printMessageLine(output, line);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Return a channel reading from my input. */
+    private FileChannel openInput() {
+        try {
+            return FileChannel.open(Paths.get(_inputName),
+                                    StandardOpenOption.READ);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", _inputName);
+        }
+    }
+
+    /** Name of the file of messages. */
+    private final String _inputName;
+
+    /** Name of the index file. */
+    private final String _indexName;
+}
@@ -0,0 +1,338 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** An exhaustive search for the rotor order and starting rotor settings
+ *  under which a ciphertext decrypts to a known piece of plaintext (a
+ *  crib) at a known offset.  Every rotor order allowed by a machine's
+ *  rotor catalog is tried with every starting setting.  The spec of each
+ *  order is built once and shared; each candidate only resets the rotor
+ *  settings of a per-thread MachineState and is rejected at the first
+ *  crib character that fails to match.  The candidates are divided among
+ *  the threads of the common ForkJoinPool.
+ *  @author Lisa Sam Wang
+ */
+class KeySearch {
+
+    /** A search over the rotor catalog, alphabet, rotor slots, and pawls
+     *  of MACHINE, with an identity plugboard.  In each order, slot 0
+     *  holds a reflector, the rightmost numPawls() slots hold moving
+     *  rotors, and the slots between hold fixed rotors. */
+    KeySearch(Machine machine) {
+        _alphabet = machine.alphabet();
+        _numRotors = machine.numRotors();
+        _pawls = machine.numPawls();
+        _plugboard = new Permutation("", _alphabet);
+        _orders = new ArrayList<>();
+        addOrders(machine.allRotors(), new Rotor[_numRotors], 0);
+        long positions = 1;
+        for (int k = 1; k < _numRotors; k += 1) {
+            if (positions > Long.MAX_VALUE / _alphabet.size()) {
+                throw error("search space too large");
+            }
+            positions *= _alphabet.size();
+        }
+        _positions = positions;
+        if (!_orders.isEmpty()
+            && _positions > Long.MAX_VALUE / _orders.size()) {
+            throw error("search space too large");
+        }
+    }
+
+    /** Search assuming plugboard PLUGBOARD. */
+    void setPlugboard(Permutation plugboard) {
+        _plugboard = plugboard;
+    }
+
+    /** Report progress by calling PROGRESS with a message after about
+     *  every INTERVAL candidates tested. */
+    void setProgress(Consumer<String> progress, long interval) {
+        _progress = progress;
+        _interval = interval;
+    }
+
+    /** Return the number of rotor orders I try. */
+    int numOrders() {
+        return _orders.size();
+    }
+
+    /** Return the number of candidate keys I try. */
+    long numCandidates() {
+        return _orders.size() * _positions;
+    }
+
+    /** Return the keys, in order of rotor order and then of starting
+     *  setting, under which CIPHERTEXT decrypts to CRIB at position
+     *  OFFSET (counting from 0).  Blanks in CIPHERTEXT and CRIB are
+     *  ignored. */
+    List<Candidate> search(String ciphertext, String crib, int offset) {
+        setCrib(ciphertext, crib, offset);
+        return search(0, numCandidates());
+    }
+
+    /** Search subsequently for keys under which CIPHERTEXT decrypts to
+     *  CRIB at position OFFSET (see search(String, String, int)). */
+    void setCrib(String ciphertext, String crib, int offset) {
+        String cipher = ciphertext.replace(" ", "");
+        String plain = crib.replace(" ", "");
+        if (offset < 0 || offset + plain.length() > cipher.length()) {
+            throw error("crib does not fit in ciphertext");
+        }
+        _cipher = new int[plain.length()];
+        _crib = new int[plain.length()];
+        for (int i = 0; i < plain.length(); i += 1) {
+            _cipher[i] = _alphabet.toInt(cipher.charAt(offset + i));
+            _crib[i] = _alphabet.toInt(plain.charAt(i));
+        }
+        _offset = offset;
+        _specs = new MachineSpec[_orders.size()];
+        for (int i = 0; i < _specs.length; i += 1) {
+            _specs[i] = new MachineSpec(_alphabet, _pawls, _orders.get(i),
+                                        _plugboard);
+        }
+    }
+
+    /** Return the keys among candidates LO .. HI-1 (numbered in order of
+     *  rotor order and then of starting setting) that match the crib
+     *  last given to setCrib, in order. */
+    List<Candidate> search(long lo, long hi) {
+        if (_specs == null) {
+            throw error("no crib given");
+        }
+        if (lo < 0 || hi > numCandidates() || lo > hi) {
+            throw error("bad range of keys");
+        }
+        _found = new ConcurrentLinkedQueue<>();
+        _tested = new AtomicLong();
+        _total = hi - lo;
+        _start = System.nanoTime();
+        ForkJoinPool.commonPool().invoke(new SearchTask(lo, hi));
+        ArrayList<Candidate> result = new ArrayList<>(_found);
+        result.sort(Comparator.comparingLong(c -> c._index));
+        report();
+        return result;
+    }
+
+    /** A key found by a search: a rotor order and starting settings. */
+    static class Candidate {
+
+        /** A key with rotors ROTORS in order, starting at SETTING, which
+         *  is candidate number INDEX of its search. */
+        Candidate(Rotor[] rotors, String setting, long index) {
+            _rotors = rotors;
+            _setting = setting;
+            _index = index;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            String[] names = new String[_rotors.length];
+            for (int k = 0; k < names.length; k += 1) {
+                names[k] = _rotors[k].name();
+            }
+            return names;
+        }
+
+        /** Return my starting settings, as for Machine.setRotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return my number in the order of search. */
+        long index() {
+            return _index;
+        }
+
+        /** Return my key as a settings line (without a plugboard). */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", rotors()) + " " + _setting;
+        }
+
+        /** My rotors. */
+        private final Rotor[] _rotors;
+        /** My starting settings. */
+        private final String _setting;
+        /** My position in the order of search. */
+        private final long _index;
+    }
+
+    /** Add to _orders every rotor order that completes ORDER, whose
+     *  first K slots are filled, using rotors from CATALOG. */
+    private void addOrders(Collection<Rotor> catalog, Rotor[] order,
+                           int k) {
+        if (k == order.length) {
+            _orders.add(order.clone());
+            return;
+        }
+        for (Rotor rotor : catalog) {
+            if (fits(rotor, k) && !Arrays.asList(order).contains(rotor)) {
+                order[k] = rotor;
+                addOrders(catalog, order, k + 1);
+                order[k] = null;
+            }
+        }
+    }
+
+    /** Return true iff ROTOR may be placed in slot K. */
+    private boolean fits(Rotor rotor, int k) {
+        if (k == 0) {
+            return rotor.reflecting();
+        }
+        return !rotor.reflecting()
+            && rotor.rotates() == (k >= _numRotors - _pawls);
+    }
+
+    /** Test candidates LO .. HI-1, recording those that match. */
+    private void scan(long lo, long hi) {
+        int size = _alphabet.size();
+        int[] settings = new int[_numRotors];
+        int[] advanced = new int[_numRotors];
+        long[] scratch = null;
+        MachineState state = null;
+        int current = -1;
+        for (long index = lo; index < hi; index += 1) {
+            int order = (int) (index / _positions);
+            if (order != current) {
+                current = order;
+                state = _specs[order].newState();
+                scratch = _specs[order].newScratch();
+            }
+            long posn = index % _positions;
+            for (int k = _numRotors - 1; k > 0; k -= 1) {
+                settings[k] = (int) (posn % size);
+                posn /= size;
+            }
+            _specs[order].settingsAfter(settings, _offset, advanced,
+                                        scratch);
+            state.set(advanced);
+            if (matches(state)) {
+                char[] setting = new char[_numRotors - 1];
+                for (int k = 1; k < _numRotors; k += 1) {
+                    setting[k - 1] = _alphabet.toChar(settings[k]);
+                }
+                _found.add(new Candidate(_orders.get(order),
+                                         new String(setting), index));
+            }
+        }
+        long done = _tested.addAndGet(hi - lo);
+        if (_progress != null
+            && done / _interval != (done - (hi - lo)) / _interval) {
+            report();
+        }
+    }
+
+    /** Return true iff the crib is the decryption of the ciphertext by a
+     *  machine in STATE, stopping at the first mismatch. */
+    private boolean matches(MachineState state) {
+        for (int i = 0; i < _crib.length; i += 1) {
+            if (state.convert(_cipher[i]) != _crib[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Send a progress report to _progress, if any. */
+    private void report() {
+        if (_progress == null) {
+            return;
+        }
+        long done = _tested.get();
+        double secs = Math.max(System.nanoTime() - _start, 1) / NANOS;
+        _progress.accept(String.format(
+            "tested %d of %d keys (%.0f keys/s), %d found",
+            done, _total, done / secs, _found.size()));
+    }
+
+    /** Tests a range of candidates, splitting it among subtasks while it
+     *  is large. */
+    private class SearchTask extends RecursiveAction {
+
+        /** A task testing candidates LO .. HI-1. */
+        SearchTask(long lo, long hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= GRAIN) {
+                scan(_lo, _hi);
+            } else {
+                long mid = _lo + (_hi - _lo) / 2;
+                invokeAll(new SearchTask(_lo, mid), new SearchTask(mid, _hi));
+            }
+        }
+
+        /** First candidate to test. */
+        private final long _lo;
+        /** Candidate after the last to test. */
+        private final long _hi;
+    }
+
+    /** Largest number of candidates tested by one task. */
+    static final int GRAIN = 1 << 14;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS = 1e9;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** All rotor orders to try. */
+    private final ArrayList<Rotor[]> _orders;
+
+    /** Number of starting settings of each rotor order. */
+    private final long _positions;
+
+    /** Plugboard assumed. */
+    private Permutation _plugboard;
+
+    /** Receives progress reports, or null. */
+    private Consumer<String> _progress;
+
+    /** Number of candidates between progress reports. */
+    private long _interval;
+
+    /** Spec of each rotor order in the current search. */
+    private MachineSpec[] _specs;
+
+    /** Ciphertext under the crib, as indices. */
+    private int[] _cipher;
+
+    /** The crib, as indices. */
+    private int[] _crib;
+
+    /** Position of the crib in the ciphertext. */
+    private int _offset;
+
+    /** Keys found so far in the current search. */
+    private ConcurrentLinkedQueue<Candidate> _found;
+
+    /** Number of candidates tested so far in the current search. */
+    private AtomicLong _tested;
+
+    /** Number of candidates in the current search. */
+    private long _total;
+
+    /** Value of System.nanoTime() at the start of the current search. */
+    private long _start;
+}
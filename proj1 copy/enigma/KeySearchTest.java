@@ -0,0 +1,79 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author Lisa Sam Wang
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Alphabet of the test machine. */
+    private static final Alphabet ALPHA = new Alphabet("ABCDEF");
+
+    /** Return a 4-slot, 2-pawl machine over ALPHA with rotors ROTORS at
+     *  SETTING, whose catalog allows six rotor orders. */
+    private Machine machine(String[] rotors, String setting) {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("R", new Permutation("(AB)(CD)(EF)", ALPHA)));
+        all.add(new FixedRotor("F", new Permutation("(ACE)(BDF)", ALPHA)));
+        all.add(new MovingRotor("P", new Permutation("(ABC)", ALPHA), "A"));
+        all.add(new MovingRotor("Q", new Permutation("(AF)(BD)", ALPHA),
+                                "C"));
+        all.add(new MovingRotor("S", new Permutation("(ACEBDF)", ALPHA),
+                                "F"));
+        Machine mach = new Machine(ALPHA, 4, 2, all);
+        mach.insertRotors(rotors);
+        mach.setRotors(setting);
+        return mach;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSearchSpace() {
+        KeySearch search =
+            new KeySearch(machine(new String[] { "R", "F", "P", "Q" },
+                                  "AAA"));
+        assertEquals(6, search.numOrders());
+        assertEquals(6 * 6 * 6 * 6, search.numCandidates());
+    }
+
+    @Test
+    public void checkFindsKey() {
+        String plain = "ABCDEFFEDCBAACEBDFFDBECA";
+        String cipher =
+            machine(new String[] { "R", "F", "S", "P" }, "CAE")
+            .convert(plain);
+        KeySearch search =
+            new KeySearch(machine(new String[] { "R", "F", "P", "Q" },
+                                  "AAA"));
+        ArrayList<String> progress = new ArrayList<>();
+        search.setProgress(progress::add, KeySearch.GRAIN);
+        List<KeySearch.Candidate> found =
+            search.search(cipher, plain.substring(4, 20), 4);
+        ArrayList<String> keys = new ArrayList<>();
+        for (KeySearch.Candidate key : found) {
+            keys.add(key.toString());
+        }
+        assertTrue(keys.contains("* R F S P CAE"));
+        for (KeySearch.Candidate key : found) {
+            Machine mach = machine(key.rotors(), key.setting());
+            assertEquals(plain.substring(4, 20),
+                         mach.convert(cipher).substring(4, 20));
+        }
+        assertFalse(progress.isEmpty());
+    }
+
+}
@@ -0,0 +1,122 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A cache of the complete conversion performed by a machine at each
+ *  rotor position, for reuse across the many messages sent with one
+ *  daily key (rotor order and plugboard).  For each setting of all the
+ *  rotors other than the fast (rightmost) one, the cache holds a table
+ *  giving the conversion of every character at every setting of the fast
+ *  rotor, so that with the table in hand, converting a character is a
+ *  single lookup.  Tables are built on first use and discarded least
+ *  recently used first once they exceed a memory budget.  A cache may be
+ *  shared by any number of threads.
+ *  @author Lisa Sam Wang
+ */
+class KeystreamCache {
+
+    /** A cache for machines with spec SPEC (or one equal to it), holding
+     *  tables of at most about BUDGET bytes in total. */
+    KeystreamCache(MachineSpec spec, long budget) {
+        _spec = spec;
+        _size = spec.alphabet().size();
+        _tableBytes = (long) _size * _size * Integer.BYTES;
+        _capacity = (int) Math.min(Integer.MAX_VALUE, budget / _tableBytes);
+        _tables = new LinkedHashMap<Long, int[]>(HASH_SIZE, LOAD, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, int[]> e) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /** Return true iff a cache with spec SPEC and budget BUDGET can hold
+     *  at least one table, and rotor positions of SPEC can be packed into
+     *  a key: that is, iff its rightmost rotor moves and the settings of
+     *  the others fit in a long. */
+    static boolean usable(MachineSpec spec, long budget) {
+        int size = spec.alphabet().size();
+        if (!spec.rotor(spec.numRotors() - 1).rotates()
+            || budget / Integer.BYTES / size / size < 1) {
+            return false;
+        }
+        double bits = (spec.numRotors() - 2) * Math.log(size) / Math.log(2);
+        return bits < Long.SIZE - 1;
+    }
+
+    /** Return the spec of the machines I serve. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return the table for the settings of all rotors but the rightmost
+     *  in SETTINGS (the rightmost is ignored).  Entry f * size + c of the
+     *  table is the conversion of c with the rightmost rotor at f. */
+    int[] table(int[] settings) {
+        long key = key(settings);
+        synchronized (_tables) {
+            int[] table = _tables.get(key);
+            if (table != null) {
+                return table;
+            }
+        }
+        int[] table = build(settings);
+        synchronized (_tables) {
+            _tables.put(key, table);
+        }
+        return table;
+    }
+
+    /** Return the number of tables currently held. */
+    int tables() {
+        synchronized (_tables) {
+            return _tables.size();
+        }
+    }
+
+    /** Return the packed settings of all rotors in SETTINGS other than the
+     *  reflector and the rightmost. */
+    private long key(int[] settings) {
+        long key = 0;
+        for (int i = settings.length - 2; i > 0; i -= 1) {
+            key = key * _size + settings[i];
+        }
+        return key;
+    }
+
+    /** Return a new table for SETTINGS (see table). */
+    private int[] build(int[] settings) {
+        int last = settings.length - 1;
+        int[] posn = settings.clone();
+        int[] table = new int[_size * _size];
+        for (int f = 0; f < _size; f += 1) {
+            posn[last] = f;
+            for (int c = 0; c < _size; c += 1) {
+                table[f * _size + c] = _spec.scramble(c, posn);
+            }
+        }
+        return table;
+    }
+
+    /** Initial capacity of the table map. */
+    private static final int HASH_SIZE = 64;
+
+    /** Load factor of the table map. */
+    private static final float LOAD = 0.75f;
+
+    /** Spec of the machines I serve. */
+    private final MachineSpec _spec;
+
+    /** Size of the alphabet of _spec. */
+    private final int _size;
+
+    /** Size of one table in bytes. */
+    private final long _tableBytes;
+
+    /** Maximum number of tables held. */
+    private final int _capacity;
+
+    /** Tables by packed rotor settings, least recently used first. */
+    private final LinkedHashMap<Long, int[]> _tables;
+}
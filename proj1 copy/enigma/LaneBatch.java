@@ -0,0 +1,172 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** Converts many independent messages, each with its own starting rotor
+ *  settings, on machines sharing one MachineSpec.  Messages are taken up
+ *  to LANES at a time, and the machines for them are advanced in lockstep,
+ *  one character of each message per step.  Their rotor settings are held
+ *  as one array per slot indexed by lane, and each rotor is applied to
+ *  all lanes in turn through flat lookup tables, so that the inner loops
+ *  are short, branch-free, and independent across lanes.  Specs whose
+ *  settings cannot be packed into odometers are converted one message
+ *  at a time instead.
+ *  @author Lisa Sam Wang
+ */
+class LaneBatch {
+
+    /** A batch converter for machines with spec SPEC. */
+    LaneBatch(MachineSpec spec) {
+        _spec = spec;
+        _alphabet = spec.alphabet();
+        _size = _alphabet.size();
+        int slots = spec.numRotors();
+        _forward = new int[slots][2 * _size];
+        _backward = new int[slots][2 * _size];
+        for (int k = 0; k < slots; k += 1) {
+            Permutation perm = spec.rotor(k).permutation();
+            for (int i = 0; i < 2 * _size; i += 1) {
+                _forward[k][i] = perm.permute(i % _size) + _size;
+                _backward[k][i] = perm.invert(i % _size) + _size;
+            }
+        }
+        _mod = new int[2 * _size];
+        for (int i = 0; i < _mod.length; i += 1) {
+            _mod[i] = i % _size;
+        }
+        _plug = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            _plug[c] = spec.plugboard().permute(c);
+        }
+    }
+
+    /** Return the conversions of MSGS[k], ignoring blanks, by a machine
+     *  with my spec starting with the rotor in each slot j at setting
+     *  SETTINGS[k][j]. */
+    char[][] convert(int[][] settings, char[][] msgs) {
+        char[][] result = new char[msgs.length][];
+        for (int k = 0; k < msgs.length; k += 1) {
+            result[k] = compact(msgs[k]);
+        }
+        if (!_spec.packable()) {
+            for (int k = 0; k < msgs.length; k += 1) {
+                MachineState state = new MachineState(_spec, settings[k]);
+                state.convert(result[k], 0, result[k].length, result[k], 0);
+            }
+            return result;
+        }
+        Integer[] order = new Integer[msgs.length];
+        for (int k = 0; k < order.length; k += 1) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> result[b].length - result[a].length);
+        int[] lanes = new int[LANES];
+        for (int first = 0; first < order.length; first += LANES) {
+            int n = Math.min(LANES, order.length - first);
+            for (int lane = 0; lane < n; lane += 1) {
+                lanes[lane] = order[first + lane];
+            }
+            convertLanes(settings, result, lanes, n);
+        }
+        return result;
+    }
+
+    /** Convert in place the messages TEXT[LANES[0 .. N-1]], which are in
+     *  order of decreasing length, starting at SETTINGS[LANES[i]]. */
+    private void convertLanes(int[][] settings, char[][] text, int[] lanes,
+                              int n) {
+        int slots = _spec.numRotors(), last = slots - 1;
+        long[] odometer = new long[n];
+        int[][] posn = new int[slots][n];
+        int[] c = new int[n];
+        int[] unpacked = new int[slots];
+        for (int lane = 0; lane < n; lane += 1) {
+            odometer[lane] = _spec.pack(settings[lanes[lane]]);
+            for (int k = 0; k < slots; k += 1) {
+                posn[k][lane] = settings[lanes[lane]][k];
+            }
+        }
+        int active = n;
+        for (int t = 0; active > 0; t += 1) {
+            while (active > 0 && text[lanes[active - 1]].length <= t) {
+                active -= 1;
+            }
+            for (int lane = 0; lane < active; lane += 1) {
+                long next = _spec.step(odometer[lane]);
+                if (_spec.carried(odometer[lane], next)) {
+                    _spec.unpack(next, unpacked);
+                    for (int k = 0; k < slots; k += 1) {
+                        posn[k][lane] = unpacked[k];
+                    }
+                } else {
+                    posn[last][lane] = _spec.fastSetting(next);
+                }
+                odometer[lane] = next;
+                c[lane] = _plug[_alphabet.toInt(text[lanes[lane]][t])];
+            }
+            for (int k = last; k >= 0; k -= 1) {
+                pass(_forward[k], posn[k], c, active);
+            }
+            for (int k = 1; k <= last; k += 1) {
+                pass(_backward[k], posn[k], c, active);
+            }
+            for (int lane = 0; lane < active; lane += 1) {
+                text[lanes[lane]][t] = _alphabet.toChar(_plug[c[lane]]);
+            }
+        }
+    }
+
+    /** Replace C[i] for each lane i < N by its conversion by a rotor at
+     *  setting POSN[i], where TABLE is the rotor's forward or backward
+     *  table. */
+    private void pass(int[] table, int[] posn, int[] c, int n) {
+        for (int i = 0; i < n; i += 1) {
+            c[i] = _mod[table[c[i] + posn[i]] - posn[i]];
+        }
+    }
+
+    /** Return MSG without blanks. */
+    private static char[] compact(char[] msg) {
+        int n = 0;
+        for (char ch : msg) {
+            if (ch != ' ') {
+                n += 1;
+            }
+        }
+        char[] result = new char[n];
+        n = 0;
+        for (char ch : msg) {
+            if (ch != ' ') {
+                result[n] = ch;
+                n += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Number of messages converted in lockstep. */
+    static final int LANES = 16;
+
+    /** The spec of the machines. */
+    private final MachineSpec _spec;
+
+    /** Alphabet of _spec. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** For each slot, entry i is the image of i mod size under the rotor's
+     *  permutation, plus size, so that subtracting a setting leaves a
+     *  non-negative index into _mod. */
+    private final int[][] _forward;
+
+    /** As for _forward, but for the inverse permutations. */
+    private final int[][] _backward;
+
+    /** Entry i is i mod size. */
+    private final int[] _mod;
+
+    /** The plugboard permutation. */
+    private final int[] _plug;
+}
@@ -0,0 +1,109 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the LaneBatch class.
+ *  @author Lisa Sam Wang
+ */
+public class LaneBatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a 5-slot, 3-pawl machine with naval rotors B, Beta, I, II
+     *  and III in order, and plugboard (AT)(EQ)(MZ). */
+    private Machine machine() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        all.add(new FixedRotor("Beta",
+                               new Permutation(NAVALA.get("Beta"), UPPER)));
+        all.add(new MovingRotor("I", new Permutation(NAVALA.get("I"), UPPER),
+                                "Q"));
+        all.add(new MovingRotor("II",
+                                new Permutation(NAVALA.get("II"), UPPER),
+                                "E"));
+        all.add(new MovingRotor("III",
+                                new Permutation(NAVALA.get("III"), UPPER),
+                                "V"));
+        Machine mach = new Machine(UPPER, 5, 3, all);
+        mach.insertRotors(new String[] { "B", "Beta", "I", "II", "III" });
+        mach.setPlugboard(new Permutation("(AT)(EQ)(MZ)", UPPER));
+        return mach;
+    }
+
+    /** Return the output of a LaneProcessor on INPUT, followed by "|"
+     *  and the message of the error it reports, if any. */
+    private String lanes(String input) {
+        Machine mach = navalMachine();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String error = "";
+        try {
+            new LaneProcessor(mach, s -> setUpNaval(mach, s))
+                .process(new Scanner(input), new PrintStream(out, true));
+        } catch (EnigmaException excp) {
+            error = "|" + excp.getMessage();
+        }
+        return out + error;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkMatchesMachine() {
+        Random random = new Random(61);
+        Machine mach = machine();
+        int n = 3 * LaneBatch.LANES + 5;
+        int[][] settings = new int[n][];
+        char[][] msgs = new char[n][];
+        String[] expected = new String[n];
+        for (int k = 0; k < n; k += 1) {
+            char[] setting = new char[4];
+            for (int j = 0; j < setting.length; j += 1) {
+                setting[j] = UPPER_STRING.charAt(random.nextInt(26));
+            }
+            mach.setRotors(new String(setting));
+            settings[k] = mach.state().settings();
+            char[] msg = new char[random.nextInt(800)];
+            for (int i = 0; i < msg.length; i += 1) {
+                msg[i] = i % 6 == 5 ? ' '
+                    : UPPER_STRING.charAt(random.nextInt(26));
+            }
+            msgs[k] = msg;
+            expected[k] = mach.convert(new String(msg));
+        }
+        char[][] result = new LaneBatch(mach.spec()).convert(settings, msgs);
+        for (int k = 0; k < n; k += 1) {
+            assertEquals(msg("checkMatchesMachine", "message %d", k),
+                         expected[k], new String(result[k]));
+        }
+    }
+
+    @Test
+    public void checkProcessorSameAsText() {
+        for (String input : StreamingProcessorTest.INPUTS) {
+            assertEquals(msg("checkProcessorSameAsText", "input %s", input),
+                         StreamingProcessorTest.text(input), lanes(input));
+        }
+    }
+
+    @Test
+    public void checkProcessorTrailingBlankLine() {
+        assertEquals("VJVVD AHBSZ\n\n",
+                     lanes("* B Beta III IV I AAAA\nHELLO WORLD\n \n"));
+    }
+
+}
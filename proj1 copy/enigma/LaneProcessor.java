@@ -0,0 +1,110 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Scanner;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Applies a machine to settings lines and messages, as TextProcessor
+ *  does, but converts all the messages together.  Each settings line
+ *  begins a message that continues to the next; messages are grouped
+ *  by spec, and each group is converted by one LaneBatch.
+ *  @author Lisa Sam Wang
+ */
+class LaneProcessor {
+
+    /** A processor that converts messages with machines configured like
+     *  MACHINE, and that calls SETUP with each settings line (a line
+     *  starting with '*') to configure MACHINE for the following
+     *  message. */
+    LaneProcessor(Machine machine, Consumer<String> setUp) {
+        _machine = machine;
+        _setUp = setUp;
+    }
+
+    /** Read settings lines and messages from INPUT until end of input
+     *  and print the converted messages to OUTPUT. */
+    void process(Scanner input, PrintStream output) {
+        ArrayList<String> lines = new ArrayList<>();
+        int last = -1;
+        while (input.hasNextLine()) {
+            lines.add(input.nextLine());
+            if (!lines.get(lines.size() - 1).isBlank()) {
+                last = lines.size() - 1;
+            }
+        }
+        if (!lines.isEmpty() && !lines.get(0).startsWith("*")) {
+            if (last > 0) {
+                throw error("Invalid setting");
+            }
+            for (int i = 1; i < lines.size(); i += 1) {
+                output.println();
+            }
+            throw error("You did not put a setting!");
+        }
+        HashMap<MachineSpec, ArrayList<Integer>> groups = new HashMap<>();
+        ArrayList<int[]> starts = new ArrayList<>();
+        ArrayList<StringBuilder> texts = new ArrayList<>();
+        int[] owner = new int[lines.size()];
+        for (int i = 0; i < lines.size(); i += 1) {
+            String line = lines.get(i);
+            if (i > last) {
+                owner[i] = TRAILING;
+            } else if (line.startsWith("*") && i == last) {
+                owner[i] = -1;
+            } else if (line.startsWith("*")) {
+                _setUp.accept(line);
+                groups.computeIfAbsent(_machine.spec(),
+                                       x -> new ArrayList<>())
+                    .add(texts.size());
+                starts.add(_machine.state().settings());
+                texts.add(new StringBuilder());
+                owner[i] = -1;
+            } else {
+                owner[i] = texts.size() - 1;
+                texts.get(owner[i]).append(line);
+            }
+        }
+        String[] results = new String[texts.size()];
+        for (MachineSpec spec : groups.keySet()) {
+            ArrayList<Integer> group = groups.get(spec);
+            int[][] settings = new int[group.size()][];
+            char[][] msgs = new char[group.size()][];
+            for (int j = 0; j < msgs.length; j += 1) {
+                settings[j] = starts.get(group.get(j));
+                msgs[j] = texts.get(group.get(j)).toString().toCharArray();
+            }
+            char[][] converted = new LaneBatch(spec).convert(settings, msgs);
+            for (int j = 0; j < msgs.length; j += 1) {
+                results[group.get(j)] = new String(converted[j]);
+            }
+        }
+        int[] used = new int[results.length];
+        for (int i = 0; i < lines.size(); i += 1) {
+            String line = lines.get(i);
+            if (owner[i] == -1) {
+                continue;
+            } else if (line.isEmpty() || owner[i] == TRAILING) {
+                output.println();
+            } else {
+                int m = owner[i], len = line.replace(" ", "").length();
+                TextProcessor.printMessageLine(
+                    output, results[m].substring(used[m], used[m] + len));
+                used[m] += len;
+            }
+        }
+    }
+
+    /** Owner of a line after the last line containing a token, which
+     *  is printed as an empty line. */
+    private static final int TRAILING = -2;
+
+    /** The machine that is set up by each settings line. */
+    private final Machine _machine;
+
+    /** Sets up _machine by a settings line. */
+    private final Consumer<String> _setUp;
+}
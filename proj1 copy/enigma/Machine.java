@@ -1,7 +1,11 @@
 package enigma;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
 import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static enigma.EnigmaException.*;
 
@@ -15,13 +19,36 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, new RotorCatalog(allRotors));
+    }
+
+    /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are those
+     *  of CATALOG. */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorCatalog catalog) {
         _alphabet = alpha;
         _rotorslots = numRotors;
         _pawls = pawls;
-        _allrotors = new ArrayList<Rotor>(allRotors);
+        _allrotors = catalog;
         _myrotors = new Rotor[numRotors];
     }
 
+    /** Return a new machine with my alphabet, rotor slots, pawls,
+     *  available rotors, and keystream budget, with no rotors inserted.
+     *  It shares my rotors, but not my state, so that it may be used by
+     *  another thread. */
+    Machine fresh() {
+        Machine result =
+            new Machine(_alphabet, _rotorslots, _pawls, _allrotors);
+        result._cacheBudget = _cacheBudget;
+        return result;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
     /** Return the number of rotor slots I have. */
     int numRotors() {
         return _rotorslots;
@@ -32,22 +59,33 @@ class Machine {
         return _pawls;
     }
 
+    /** Return all the rotors available to me. */
+    Collection<Rotor> allRotors() {
+        return _allrotors.all();
+    }
+
     /** Return my Array of rotors. */
     Rotor[] myRotors() {
         return _myrotors; }
 
+    /** Return the spec of my current rotors and plugboard, which may be
+     *  shared with other threads. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return the current state of my rotors. */
+    MachineState state() {
+        return _state;
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        _myrotors = new Rotor[_rotorslots];
         for (int i = 0; i < rotors.length; i++) {
-            for (int k = 0; k < _allrotors.size(); k++) {
-                String wantedrotor = rotors[i];
-                String checkrotor = _allrotors.get(k).name();
-                if (wantedrotor.equals(checkrotor)) {
-                    _myrotors[i] = _allrotors.get(k);
-                }
-            }
+            _myrotors[i] = _allrotors.get(rotors[i]);
         }
         int actpawls = 0;
         for (int i = 0; i < _myrotors.length; i++) {
@@ -64,84 +102,268 @@ class Machine {
         if (_myrotors.length != rotors.length) {
             throw new EnigmaException("Nonexistent rotor");
         }
+        if (_plugboard == null) {
+            _plugboard = new Permutation("", _alphabet);
+        }
+        if (!usesSpec(_myrotors, _plugboard)) {
+            _spec = new MachineSpec(_alphabet, _pawls, _myrotors, _plugboard);
+        }
+        _state = _spec.newState();
+        attachCache();
+    }
+
+    /** Set my rotors, plugboard, and rotor settings to those of STATE,
+     *  which must be for a spec with my alphabet and number of slots.  I
+     *  use a copy of STATE, so that STATE itself may be restored again. */
+    void restore(MachineState state) {
+        MachineSpec spec = state.spec();
+        if (spec.alphabet() != _alphabet || spec.numRotors() != _rotorslots) {
+            throw error("state is for a different machine");
+        }
+        _myrotors = new Rotor[_rotorslots];
+        for (int k = 0; k < _rotorslots; k += 1) {
+            _myrotors[k] = spec.rotor(k);
+        }
+        _plugboard = spec.plugboard();
+        _spec = spec;
+        _state = state.copy();
+        attachCache();
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        String[] withring = setting.split(" ");
-        if (withring[0].length() != numRotors() - 1) {
-            throw new EnigmaException("Wrong length of string");
-        }
-        if (withring.length == 2) {
-            for (int i = 0; i < withring[1].length(); i++) {
-                char mychar = withring[1].charAt(i);
-                int intchar = _alphabet.toInt(mychar);
-                int origcharint = _alphabet.toInt(withring[0].charAt(i));
-                _myrotors[i + 1].set(
-                        (intchar + origcharint) % _alphabet.size());
-            }
+        _state.setRotors(setting);
+    }
 
+    /** Set the plugboard to PLUGBOARD. */
+    void setPlugboard(Permutation plugboard) {
+        _plugboard = plugboard;
+        if (_spec != null && !usesSpec(_myrotors, plugboard)) {
+            _spec = _spec.withPlugboard(plugboard);
+            _state = new MachineState(_spec, _state.settings());
+            attachCache();
         }
-        for (int i = 0; i < withring[0].length(); i++) {
-            char mychar = withring[0].charAt(i);
-            if (!_alphabet.contains(mychar)) {
-                throw new EnigmaException("Letter not in alphabet");
+    }
+
+    /** Return true iff my current spec has rotors ROTORS and a plugboard
+     *  equal to PLUGBOARD, so that it need not be rebuilt when successive
+     *  messages use the same key. */
+    private boolean usesSpec(Rotor[] rotors, Permutation plugboard) {
+        if (_spec == null || rotors.length != _spec.numRotors()
+            || !plugboard.equals(_spec.plugboard())) {
+            return false;
+        }
+        for (int k = 0; k < rotors.length; k += 1) {
+            if (rotors[k] != _spec.rotor(k)) {
+                return false;
             }
-            _myrotors[i + 1].set(mychar);
         }
+        return true;
     }
 
-    /** Set the plugboard to PLUGBOARD. */
-    void setPlugboard(Permutation plugboard) {
-        _plugboard = plugboard;
+    /** Convert using a KeystreamCache of at most BUDGET bytes for each
+     *  combination of rotors and plugboard, or none if BUDGET is 0.  The
+     *  cache is kept for as long as successive settings use the same
+     *  rotors and plugboard, so that messages sent with the same daily
+     *  key share it. */
+    void setKeystreamBudget(long budget) {
+        _cacheBudget = budget;
+        _cache = null;
+        if (_spec != null) {
+            attachCache();
+        }
+    }
+
+    /** Give my state a keystream cache for my spec, if I am using caches
+     *  and one can be built. */
+    private void attachCache() {
+        if (_cacheBudget <= 0
+            || !KeystreamCache.usable(_spec, _cacheBudget)) {
+            _cache = null;
+            return;
+        }
+        if (_cache == null || !_cache.spec().equals(_spec)) {
+            _cache = new KeystreamCache(_spec, _cacheBudget);
+        }
+        _state.useCache(_cache);
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        boolean stepped = true;
-        boolean atnotch = _myrotors[_rotorslots - 1].atNotch();
-        _myrotors[_rotorslots - 1].advance();
-        for (int i = _rotorslots - 2;
-             i >= _rotorslots - 1 - _pawls; i--) {
-            if ((stepped && atnotch)
-                || (stepped && _myrotors[i].atNotch()
-                    && _myrotors[i - 1].rotates())) {
-                stepped = true;
-                atnotch = _myrotors[i].atNotch();
-                _myrotors[i].advance();
-            } else {
-                stepped = false;
-                atnotch = _myrotors[i].atNotch();
+        return _state.convert(c);
+    }
+
+    /** Advance my rotors to the settings they would have after
+     *  converting N more characters, without converting anything. */
+    void advance(long n) {
+        _state.advance(n);
+    }
+
+    /** Return the settings of my rotors after converting OFFSET more
+     *  characters, as a string of numRotors()-1 characters in my alphabet
+     *  suitable for setRotors.  Does not change my state. */
+    String positionAt(long offset) {
+        return _state.positionAt(offset);
+    }
+
+    /** Returns the encoding/decoding of MSG, updating the state of
+     *  the rotors accordingly. */
+    String convert(String msg) {
+        char[] buf = msg.toCharArray();
+        int n = convert(buf, 0, buf.length, buf, 0);
+        return new String(buf, 0, n);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF, skipping blanks,
+     *  and store the results in OUT starting at OUTOFF, updating the state
+     *  of the rotors accordingly.  Returns the number of characters
+     *  stored.  IN and OUT may be the same array, provided that OUTOFF
+     *  <= OFF. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        return _state.convert(in, off, len, out, outOff);
+    }
+
+    /** Convert the LEN bytes of BUF starting at OFF in place, taking each
+     *  unsigned byte value as an index in my alphabet, which must be an
+     *  alphabet of bytes, and update the state of the rotors
+     *  accordingly. */
+    void convert(byte[] buf, int off, int len) {
+        checkBytes();
+        _state.convert(buf, off, len);
+    }
+
+    /** Convert the bytes remaining in IN as for convert(byte[], int, int)
+     *  and put the results into OUT, updating the state of the rotors
+     *  accordingly.  Stops when IN is exhausted or OUT is full.  Returns
+     *  the number of bytes converted.  IN and OUT may share their
+     *  contents, provided that OUT's position is at most IN's. */
+    int convert(ByteBuffer in, ByteBuffer out) {
+        checkBytes();
+        return _state.convert(in, out);
+    }
+
+    /** Check that my alphabet is an alphabet of bytes. */
+    private void checkBytes() {
+        if (!_alphabet.isBytes()) {
+            throw error("machine does not have a byte alphabet");
+        }
+    }
+
+    /** Convert characters from IN, skipping blanks, and put the results
+     *  into OUT, updating the state of the rotors accordingly.  Stops when
+     *  IN is exhausted or OUT is full.  Returns the number of characters
+     *  put into OUT. */
+    int convert(CharBuffer in, CharBuffer out) {
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            int n = 0;
+            while (in.hasRemaining() && out.hasRemaining()) {
+                int len = Math.min(in.remaining(), out.remaining());
+                int k = convert(in.array(), in.arrayOffset() + in.position(),
+                                len, out.array(),
+                                out.arrayOffset() + out.position());
+                in.position(in.position() + len);
+                out.position(out.position() + k);
+                n += k;
+            }
+            return n;
+        }
+        int start = out.position();
+        while (in.hasRemaining() && out.hasRemaining()) {
+            char c = in.get();
+            if (c != ' ') {
+                out.put(_alphabet.toChar(convert(_alphabet.toInt(c))));
             }
         }
-        int answer = _plugboard.permute(c);
-        for (int i = _rotorslots - 1; i >= 0; i--) {
-            answer = _myrotors[i].convertForward(answer);
+        return out.position() - start;
+    }
+
+    /** Returns the encoding/decoding of MSG, as for convert(MSG), but
+     *  computed in parallel (see convertParallel(char[], ...)). */
+    String convertParallel(String msg) {
+        char[] buf = msg.toCharArray();
+        int n = convertParallel(buf, 0, buf.length, buf, 0);
+        return new String(buf, 0, n);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF into OUT starting
+     *  at OUTOFF exactly as convert(IN, OFF, LEN, OUT, OUTOFF) does,
+     *  including the final state of the rotors, but splitting long
+     *  messages into chunks that are converted concurrently in the common
+     *  ForkJoinPool.  Each chunk starts from the rotor settings at its
+     *  offset in the message, computed with settingsAfter. */
+    int convertParallel(char[] in, int off, int len, char[] out,
+                        int outOff) {
+        if (len < PARALLEL_THRESHOLD) {
+            return convert(in, off, len, out, outOff);
         }
-        for (int i = 1; i < _rotorslots; i++) {
-            answer = _myrotors[i].convertBackward(answer);
+        int n = 0;
+        for (int i = off; i < off + len; i += 1) {
+            if (in[i] != ' ') {
+                out[outOff + n] = in[i];
+                n += 1;
+            }
         }
-        answer = _plugboard.permute(answer);
-        return answer;
+        ForkJoinPool.commonPool().invoke(new ChunkTask(out, outOff, n, 0));
+        advance(n);
+        return n;
     }
 
-    /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
-    String convert(String msg) {
-        msg = msg.replaceAll(" ", "");
-        String result = "";
-        for (int i = 0; i < msg.length(); i++) {
-            char converted = _alphabet.toChar(
-                    convert(_alphabet.toInt(msg.charAt(i))));
-            result += converted;
+    /** Convert, in place, the characters BUF[START .. START+LEN-1], which
+     *  begin OFFSET characters from the current position of my rotors,
+     *  without changing the state of my rotors. */
+    private void convertChunk(char[] buf, int start, int len, long offset) {
+        MachineState state =
+            new MachineState(_spec, _spec.settingsAfter(_state.settings(),
+                                                         offset));
+        state.useCache(_cache);
+        state.convert(buf, start, len, buf, start);
+    }
+
+    /** Converts a range of characters in place, splitting it among
+     *  subtasks while it is large. */
+    private class ChunkTask extends RecursiveAction {
+
+        /** A task converting BUF[START .. START+LEN-1], which begins
+         *  OFFSET characters from the current rotor position. */
+        ChunkTask(char[] buf, int start, int len, long offset) {
+            _buf = buf;
+            _start = start;
+            _len = len;
+            _offset = offset;
         }
-        return result;
+
+        @Override
+        protected void compute() {
+            if (_len <= CHUNK_SIZE) {
+                convertChunk(_buf, _start, _len, _offset);
+            } else {
+                int half = _len / 2;
+                invokeAll(new ChunkTask(_buf, _start, half, _offset),
+                          new ChunkTask(_buf, _start + half, _len - half,
+                                        _offset + half));
+            }
+        }
+
+        /** Characters to convert. */
+        private final char[] _buf;
+        /** Index of first character to convert. */
+        private final int _start;
+        /** Number of characters to convert. */
+        private final int _len;
+        /** Offset of _buf[_start] from the current rotor position. */
+        private final long _offset;
     }
 
+    /** Messages shorter than this are not worth converting in parallel. */
+    static final int PARALLEL_THRESHOLD = 1 << 18;
+
+    /** Largest number of characters converted by one parallel task. */
+    static final int CHUNK_SIZE = 1 << 16;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -151,12 +373,24 @@ class Machine {
     /** Number of pawls. */
     private int _pawls;
 
-    /** Arraylist of all available rotors. */
-    private ArrayList<Rotor> _allrotors;
+    /** Catalog of all available rotors. */
+    private final RotorCatalog _allrotors;
 
     /** Array of rotors of this machine. */
     private Rotor[] _myrotors;
 
     /** The original plugboard. */
     private Permutation _plugboard;
+
+    /** My rotors and plugboard. */
+    private MachineSpec _spec;
+
+    /** The settings of my rotors. */
+    private MachineState _state;
+
+    /** Memory budget of keystream caches, or 0 if none are used. */
+    private long _cacheBudget;
+
+    /** Keystream cache for my current spec, or null. */
+    private KeystreamCache _cache;
 }
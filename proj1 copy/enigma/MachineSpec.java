@@ -0,0 +1,590 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** An immutable description of an enigma machine with its rotors
+ *  inserted: the alphabet, the rotor in each slot (and with it, its
+ *  permutation and notches), the number of pawls, and the plugboard.
+ *  A spec holds no rotor settings, so one spec may be shared by any
+ *  number of threads, each converting with its own MachineState.
+ *  @author Lisa Sam Wang
+ */
+class MachineSpec {
+
+    /** A machine with alphabet ALPHA, PAWLS pawls, rotor ROTORS[k] in slot
+     *  k (ROTORS[0] being the reflector), and plugboard PLUGBOARD. */
+    MachineSpec(Alphabet alpha, int pawls, Rotor[] rotors,
+                Permutation plugboard) {
+        this(new RotorTables(alpha, pawls, rotors.clone()), plugboard);
+    }
+
+    /** A machine with the rotors described by TABLES and plugboard
+     *  PLUGBOARD.  The tables are shared, and their contents are copied
+     *  into my fields so that stepping reads them directly. */
+    private MachineSpec(RotorTables tables, Permutation plugboard) {
+        _tables = tables;
+        _alphabet = tables.alphabet;
+        _pawls = tables.pawls;
+        _rotors = tables.rotors;
+        _plugboard = plugboard;
+        _leftEnd = tables.leftEnd;
+        _rightStart = tables.rightStart;
+        _notched = tables.notched;
+        _moves = tables.moves;
+        _gaps = tables.gaps;
+        _bits = tables.bits;
+        _packable = tables.packable;
+        _fieldMask = tables.fieldMask;
+        _pairMask = tables.pairMask;
+        _lowStep = tables.lowStep;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots I have. */
+    int numRotors() {
+        return _rotors.length;
+    }
+
+    /** Return the number of pawls I have. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return the rotor in slot K. */
+    Rotor rotor(int k) {
+        return _rotors[k];
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Return a spec identical to me, but with plugboard PLUGBOARD.
+     *  It shares my rotor tables, which do not depend on the
+     *  plugboard. */
+    MachineSpec withPlugboard(Permutation plugboard) {
+        return new MachineSpec(_tables, plugboard);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof MachineSpec)) {
+            return false;
+        }
+        MachineSpec other = (MachineSpec) obj;
+        return _alphabet == other._alphabet && _pawls == other._pawls
+            && Arrays.equals(_rotors, other._rotors)
+            && _plugboard.equals(other._plugboard);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_rotors) * HASH_MULTIPLIER
+            + _plugboard.hashCode();
+    }
+
+    /** Return true iff the rotor in slot K never moves: either it has no
+     *  ratchet or it is to the left of all the pawls. */
+    boolean isStatic(int k) {
+        return _tables.isStatic(k);
+    }
+
+    /** Return true iff my static rotors can be fused into tables by
+     *  fuse, which requires that the reflector slot be static. */
+    boolean fusable() {
+        return _leftEnd >= 0;
+    }
+
+    /** Return a new state for me with all rotors at their 0 settings. */
+    MachineState newState() {
+        return new MachineState(this);
+    }
+
+    /** Step the rotor SETTINGS (one per slot) as for one keystroke.
+     *  The rightmost rotor always steps.  Moving leftward through the
+     *  slots with pawls, each rotor steps iff the rotor to its right
+     *  stepped and either that rotor was at a notch or this rotor is at
+     *  a notch and the rotor to its left rotates (double stepping).  On
+     *  most keystrokes only the rightmost rotor moves, and the slower
+     *  rotors to its left are not examined past the first that stays.
+     *  Returns true iff any rotor other than the rightmost stepped. */
+    boolean step(int[] settings) {
+        int last = _rotors.length - 1;
+        boolean atnotch = _notched[last][settings[last]];
+        stepSlot(last, settings);
+        boolean carried = false;
+        for (int i = last - 1; i >= last - _pawls; i -= 1) {
+            boolean notch = _notched[i][settings[i]];
+            if (!atnotch && !(notch && i > 0 && _moves[i - 1])) {
+                break;
+            }
+            stepSlot(i, settings);
+            carried = true;
+            atnotch = notch;
+        }
+        return carried;
+    }
+
+    /** Advance SETTINGS[I] as the rotor in slot I would advance. */
+    private void stepSlot(int i, int[] settings) {
+        if (_moves[i]) {
+            int next = settings[i] + 1;
+            settings[i] = next == _alphabet.size() ? 0 : next;
+        }
+    }
+
+    /** Return true iff my rotor settings can be packed into an
+     *  odometer (see pack). */
+    boolean packable() {
+        return _packable;
+    }
+
+    /** Return SETTINGS packed into a single long odometer, in which the
+     *  setting of slot k occupies a field of _bits bits, the rightmost
+     *  slot in the lowest bits.  Requires packable(). */
+    long pack(int[] settings) {
+        if (!_packable) {
+            throw error("rotor settings too large to pack");
+        }
+        long odometer = 0;
+        for (int k = 0; k < settings.length; k += 1) {
+            odometer = (odometer << _bits) | settings[k];
+        }
+        return odometer;
+    }
+
+    /** Store the settings packed in ODOMETER into SETTINGS. */
+    void unpack(long odometer, int[] settings) {
+        for (int k = settings.length - 1; k >= 0; k -= 1) {
+            settings[k] = (int) (odometer & _fieldMask);
+            odometer >>>= _bits;
+        }
+    }
+
+    /** Return the setting of the rightmost slot in ODOMETER. */
+    int fastSetting(long odometer) {
+        return (int) (odometer & _fieldMask);
+    }
+
+    /** Return true iff a rotor other than the rightmost has a different
+     *  setting in odometers ODOMETER0 and ODOMETER1. */
+    boolean carried(long odometer0, long odometer1) {
+        return ((odometer0 ^ odometer1) & ~_fieldMask) != 0;
+    }
+
+    /** Return ODOMETER stepped as for one keystroke (see step(int[])).
+     *  Whether any rotor but the rightmost steps depends only on the
+     *  settings of the two rightmost slots, so a table indexed by their
+     *  fields gives the increment of the odometer on every keystroke
+     *  without a carry; only carries are worked out slot by slot. */
+    long step(long odometer) {
+        long delta = _lowStep[(int) (odometer & _pairMask)];
+        if (delta != CARRY) {
+            return odometer + delta;
+        }
+        int last = _rotors.length - 1;
+        int shift = 0;
+        int s = (int) (odometer & _fieldMask);
+        boolean atnotch = _notched[last][s];
+        odometer += stepDelta(last, s, shift);
+        for (int i = last - 1; i >= last - _pawls; i -= 1) {
+            shift += _bits;
+            s = (int) ((odometer >>> shift) & _fieldMask);
+            boolean notch = _notched[i][s];
+            if (!atnotch && !(notch && i > 0 && _moves[i - 1])) {
+                break;
+            }
+            odometer += stepDelta(i, s, shift);
+            atnotch = notch;
+        }
+        return odometer;
+    }
+
+    /** Return the amount to add to an odometer to step slot I, whose
+     *  field starts at bit SHIFT, from setting S. */
+    private long stepDelta(int i, int s, int shift) {
+        return stepDelta(_moves[i], s, _alphabet.size(), shift);
+    }
+
+    /** Return the amount to add to an odometer to step a slot whose
+     *  field starts at bit SHIFT from setting S, where the alphabet has
+     *  SIZE characters, if MOVES is true, or else 0. */
+    private static long stepDelta(boolean moves, int s, int size,
+                                  int shift) {
+        if (!moves) {
+            return 0;
+        }
+        return (s == size - 1 ? -s : 1L) << shift;
+    }
+
+    /** Return the conversion of C by my plugboard and rotors, with the
+     *  rotors at SETTINGS. */
+    int scramble(int c, int[] settings) {
+        int answer = _plugboard.permute(c);
+        for (int i = _rotors.length - 1; i >= 0; i -= 1) {
+            answer = _rotors[i].convertForward(answer, settings[i]);
+        }
+        for (int i = 1; i < _rotors.length; i += 1) {
+            answer = _rotors[i].convertBackward(answer, settings[i]);
+        }
+        return _plugboard.permute(answer);
+    }
+
+    /** Fill ENTRY, REFLECT, and EXIT (each of my alphabet's size) with
+     *  the fused conversions performed by my static rotors at SETTINGS,
+     *  for use by scramble(int, int[], int[], int[], int[]).  ENTRY is
+     *  the plugboard followed by the static rotors at the right end,
+     *  converting forward; REFLECT is the reflector and the static rotors
+     *  beside it, converting forward and back; EXIT is the static rotors
+     *  at the right end converting backward, followed by the plugboard.
+     *  Requires fusable(). */
+    void fuse(int[] settings, int[] entry, int[] reflect, int[] exit) {
+        int last = _rotors.length - 1;
+        for (int c = 0; c < entry.length; c += 1) {
+            int x = _plugboard.permute(c);
+            for (int i = last; i >= _rightStart; i -= 1) {
+                x = _rotors[i].convertForward(x, settings[i]);
+            }
+            entry[c] = x;
+            x = c;
+            for (int i = _leftEnd; i >= 0; i -= 1) {
+                x = _rotors[i].convertForward(x, settings[i]);
+            }
+            for (int i = 1; i <= _leftEnd; i += 1) {
+                x = _rotors[i].convertBackward(x, settings[i]);
+            }
+            reflect[c] = x;
+            x = c;
+            for (int i = _rightStart; i <= last; i += 1) {
+                x = _rotors[i].convertBackward(x, settings[i]);
+            }
+            exit[c] = _plugboard.permute(x);
+        }
+    }
+
+    /** Return the conversion of C by my plugboard and rotors, with the
+     *  rotors at SETTINGS, where ENTRY, REFLECT, and EXIT are the tables
+     *  filled by fuse for SETTINGS.  Only the rotors that can move are
+     *  applied individually. */
+    int scramble(int c, int[] settings, int[] entry, int[] reflect,
+                 int[] exit) {
+        int answer = entry[c];
+        for (int i = _rightStart - 1; i > _leftEnd; i -= 1) {
+            answer = _rotors[i].convertForward(answer, settings[i]);
+        }
+        answer = reflect[answer];
+        for (int i = _leftEnd + 1; i < _rightStart; i += 1) {
+            answer = _rotors[i].convertBackward(answer, settings[i]);
+        }
+        return exit[answer];
+    }
+
+    /** Return the settings of all my rotor slots after N keystrokes
+     *  starting from SETTINGS (see settingsAfter(int[], long, int[],
+     *  long[])). */
+    int[] settingsAfter(int[] settings, long n) {
+        int[] result = new int[settings.length];
+        settingsAfter(settings, n, result, newScratch());
+        return result;
+    }
+
+    /** Return a work array for settingsAfter. */
+    long[] newScratch() {
+        return new long[2 * _alphabet.size()];
+    }
+
+    /** Set RESULT, which must not be SETTINGS, to the settings of all my
+     *  rotor slots after N keystrokes starting from SETTINGS, using
+     *  SCRATCH, as made by newScratch(), for work space.  The rotor in
+     *  each slot steps only on keystrokes on which the rotor to its right
+     *  steps, so working leftward, each slot is fast-forwarded through
+     *  the number of steps taken by its right-hand neighbor.  The cost is
+     *  independent of N, and nothing is allocated. */
+    void settingsAfter(int[] settings, long n, int[] result,
+                       long[] scratch) {
+        if (n < 0) {
+            throw error("cannot move rotors backward");
+        }
+        int size = _alphabet.size();
+        int last = _rotors.length - 1;
+        System.arraycopy(settings, 0, result, 0, settings.length);
+        if (_moves[last]) {
+            result[last] = (int) ((result[last] + n % size) % size);
+        }
+        long steps = n;
+        for (int i = last - 1; i >= last - _pawls && steps > 0; i -= 1) {
+            steps = fastForward(i, settings[i + 1], steps, result, scratch);
+        }
+    }
+
+    /** Return the number of times the rotor in slot I steps when the
+     *  rotor to its right (its driver) steps M times starting at setting
+     *  X, and set RESULT[I], initially its starting setting, to its final
+     *  setting.  It steps whenever its driver steps from a notch, and
+     *  also, if the rotor to its left moves, whenever the driver steps
+     *  while it is itself at a notch.  Each full revolution of the driver
+     *  returns it to X, so the setting of the rotor at the start of each
+     *  revolution cycles with period at most the alphabet size; whole
+     *  revolutions are skipped along that cycle.  SCRATCH holds, for each
+     *  setting, the revolution at which it was first seen and the count
+     *  of steps then. */
+    private long fastForward(int i, int x, long m, int[] result,
+                             long[] scratch) {
+        int size = _alphabet.size();
+        boolean[] selfNotch = i > 0 && _moves[i - 1] ? _notched[i] : null;
+        int period = _moves[i + 1] ? size : 1;
+        long revs = m / period;
+        long count = 0;
+        int y = result[i];
+        Arrays.fill(scratch, 0, size, -1);
+        boolean skipped = false;
+        for (long r = 0; r < revs; r += 1) {
+            if (!skipped && scratch[y] >= 0) {
+                long cycle = r - scratch[y];
+                long skip = (revs - r) / cycle;
+                count += skip * (count - scratch[size + y]);
+                r += skip * cycle;
+                skipped = true;
+                if (r >= revs) {
+                    break;
+                }
+            } else if (!skipped) {
+                scratch[y] = r;
+                scratch[size + y] = count;
+            }
+            long moved = simulate(i, x, selfNotch, y, period);
+            count += moved >>> Integer.SIZE;
+            y = (int) (moved & SETTING_MASK);
+        }
+        long moved = simulate(i, x, selfNotch, y, (int) (m % period));
+        result[i] = (int) (moved & SETTING_MASK);
+        return count + (moved >>> Integer.SIZE);
+    }
+
+    /** Simulate M steps of the driver of the rotor in slot I, starting at
+     *  setting X, on that rotor starting at setting Y, which steps also
+     *  when at a setting marked in SELFNOTCH (if not null).  Return the
+     *  number of times the rotor steps, shifted left by Integer.SIZE,
+     *  plus its final setting.  Takes time proportional to the number of
+     *  steps of the rotor, not to M. */
+    private long simulate(int i, int x, boolean[] selfNotch, int y, int m) {
+        int size = _alphabet.size();
+        int[] gap = _gaps[i + 1];
+        boolean driverMoves = _moves[i + 1];
+        boolean moves = _moves[i];
+        long count = 0;
+        while (m > 0) {
+            if (selfNotch == null || !selfNotch[y]) {
+                int dist = gap[x];
+                if (dist >= m) {
+                    break;
+                }
+                if (driverMoves) {
+                    x = (x + dist) % size;
+                }
+                m -= dist;
+            }
+            count += 1;
+            m -= 1;
+            if (driverMoves) {
+                x = (x + 1) % size;
+            }
+            if (moves) {
+                y = (y + 1) % size;
+            }
+        }
+        return (count << Integer.SIZE) | y;
+    }
+
+    /** The tables describing the rotors of a machine, which do not
+     *  depend on its plugboard, so that specs differing only in their
+     *  plugboards share one. */
+    private static class RotorTables {
+        /** The tables for the machine with alphabet ALPHA, PAWLS pawls,
+         *  and rotor ROTORS[k] in slot k. */
+        RotorTables(Alphabet alpha, int pawls, Rotor[] rotors) {
+            alphabet = alpha;
+            this.pawls = pawls;
+            this.rotors = rotors;
+            int last = rotors.length - 1;
+            int left = -1;
+            while (left < last && isStatic(left + 1)) {
+                left += 1;
+            }
+            int right = last + 1;
+            while (right - 1 > left && isStatic(right - 1)) {
+                right -= 1;
+            }
+            leftEnd = left;
+            rightStart = right;
+            notched = new boolean[rotors.length][];
+            moves = new boolean[rotors.length];
+            for (int k = 0; k < rotors.length; k += 1) {
+                notched[k] = new boolean[alpha.size()];
+                for (int p = 0; p < alpha.size(); p += 1) {
+                    notched[k][p] = rotors[k].atNotch(p);
+                }
+                moves[k] = rotors[k].rotates();
+            }
+            gaps = new int[rotors.length][];
+            for (int k = 0; k < rotors.length; k += 1) {
+                gaps[k] = notchGaps(k);
+            }
+            bits = Integer.SIZE
+                - Integer.numberOfLeadingZeros(alpha.size() - 1);
+            packable = rotors.length >= 2
+                && bits * rotors.length < Long.SIZE
+                && 2 * bits <= MAX_PAIR_BITS;
+            fieldMask = (1L << bits) - 1;
+            pairMask = (1L << (2 * bits)) - 1;
+            lowStep = packable ? lowSteps() : null;
+        }
+
+        /** Return true iff the rotor in slot K never moves (see
+         *  MachineSpec.isStatic). */
+        boolean isStatic(int k) {
+            return !rotors[k].rotates() || k < rotors.length - 1 - pawls;
+        }
+
+        /** Return the table used by step(long): indexed by the fields of
+         *  the two rightmost slots, the increment of the odometer for one
+         *  keystroke, or CARRY if the keystroke steps any other rotor. */
+        private long[] lowSteps() {
+            int last = rotors.length - 1;
+            long[] table = new long[1 << (2 * bits)];
+            Arrays.fill(table, CARRY);
+            for (int left = 0; left < alphabet.size(); left += 1) {
+                for (int right = 0; right < alphabet.size(); right += 1) {
+                    boolean pawl = notched[last - 1][left] && last - 1 > 0
+                        && moves[last - 2];
+                    if (pawls == 0 || !notched[last][right] && !pawl) {
+                        table[(left << bits) | right] =
+                            stepDelta(moves[last], right, alphabet.size(),
+                                      0);
+                    }
+                }
+            }
+            return table;
+        }
+
+        /** Return an array giving, for each setting of the rotor in slot
+         *  K, the number of steps until it is next at a notch (0 if it is
+         *  at a notch now, and Integer.MAX_VALUE if it has none). */
+        private int[] notchGaps(int k) {
+            int size = alphabet.size();
+            int[] gap = new int[size];
+            int next = Integer.MAX_VALUE;
+            for (int pass = 0; pass < 2; pass += 1) {
+                for (int p = size - 1; p >= 0; p -= 1) {
+                    if (notched[k][p]) {
+                        next = 0;
+                    } else if (next != Integer.MAX_VALUE) {
+                        next += 1;
+                    }
+                    gap[p] = next;
+                }
+            }
+            return gap;
+        }
+
+        /** Common alphabet of the rotors. */
+        private final Alphabet alphabet;
+        /** Number of pawls. */
+        private final int pawls;
+        /** The rotor in each slot. */
+        private final Rotor[] rotors;
+        /** Notch of each slot and setting (see _notched). */
+        private final boolean[][] notched;
+        /** Steps to the next notch of each slot and setting (see
+         *  _gaps). */
+        private final int[][] gaps;
+        /** Whether the rotor in each slot rotates. */
+        private final boolean[] moves;
+        /** Number of bits in each field of an odometer. */
+        private final int bits;
+        /** Mask selecting the rightmost field of an odometer. */
+        private final long fieldMask;
+        /** Mask selecting the two rightmost fields of an odometer. */
+        private final long pairMask;
+        /** True iff settings can be packed into odometers. */
+        private final boolean packable;
+        /** The low-step table (see lowSteps), or null. */
+        private final long[] lowStep;
+        /** Last slot of the static rotors at the left end (see
+         *  _leftEnd). */
+        private final int leftEnd;
+        /** First slot of the static rotors at the right end (see
+         *  _rightStart). */
+        private final int rightStart;
+    }
+
+    /** Marks keystrokes in the low-step table that step more than the
+     *  rightmost rotor. */
+    private static final long CARRY = Long.MIN_VALUE;
+
+    /** Mask selecting the final setting from the result of simulate. */
+    private static final long SETTING_MASK = 0xffffffffL;
+
+    /** Largest number of bits used to index the low-step table. */
+    private static final int MAX_PAIR_BITS = 20;
+
+    /** Multiplier used in combining hash codes. */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /** The tables describing my rotors, shared with specs that differ
+     *  from me only in their plugboards. */
+    private final RotorTables _tables;
+
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** The rotor in each slot. */
+    private final Rotor[] _rotors;
+
+    /** The plugboard. */
+    private final Permutation _plugboard;
+
+    /** Indexed by slot and setting: true iff the rotor in that slot is
+     *  at a notch at that setting. */
+    private final boolean[][] _notched;
+
+    /** Indexed by slot and setting: the number of steps until the rotor
+     *  in that slot is next at a notch, as computed by notchGaps. */
+    private final int[][] _gaps;
+
+    /** Indexed by slot: true iff the rotor in that slot rotates. */
+    private final boolean[] _moves;
+
+    /** Number of bits in each field of an odometer. */
+    private final int _bits;
+
+    /** Mask selecting the rightmost field of an odometer. */
+    private final long _fieldMask;
+
+    /** Mask selecting the two rightmost fields of an odometer. */
+    private final long _pairMask;
+
+    /** True iff settings can be packed into odometers. */
+    private final boolean _packable;
+
+    /** Odometer increments by the fields of the two rightmost slots (see
+     *  lowSteps), or null if not packable. */
+    private final long[] _lowStep;
+
+    /** Slots 0 through _leftEnd are static; -1 if slot 0 is not. */
+    private final int _leftEnd;
+
+    /** Slots _rightStart through the last are static, and the slot before
+     *  _rightStart is not (or is _leftEnd). */
+    private final int _rightStart;
+}
@@ -0,0 +1,324 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+
+import static enigma.EnigmaException.*;
+
+/** The mutable part of an enigma machine: the settings of the rotors of
+ *  a MachineSpec.  States are cheap to create and copy, and are not
+ *  thread-safe; each thread converting with a shared spec should have
+ *  its own.
+ *  @author Lisa Sam Wang
+ */
+class MachineState {
+
+    /** A state for SPEC with all rotors at their 0 settings. */
+    MachineState(MachineSpec spec) {
+        this(spec, new int[spec.numRotors()]);
+    }
+
+    /** A state for SPEC with the rotor in slot k at SETTINGS[k]. */
+    MachineState(MachineSpec spec, int[] settings) {
+        _spec = spec;
+        _alphabet = spec.alphabet();
+        _settings = settings.clone();
+        _packed = spec.packable();
+        if (_packed) {
+            _odometer = spec.pack(_settings);
+        }
+        if (spec.fusable()) {
+            int size = _alphabet.size();
+            _entry = new int[size];
+            _reflect = new int[size];
+            _exit = new int[size];
+            _stale = true;
+        }
+    }
+
+    /** Return the spec whose state I hold. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return a new state for the same spec with the same settings,
+     *  sharing none of my tables but starting with copies of my fused
+     *  ones, if current. */
+    MachineState copy() {
+        MachineState result = new MachineState(_spec, _settings);
+        if (_entry != null && !_stale) {
+            System.arraycopy(_entry, 0, result._entry, 0, _entry.length);
+            System.arraycopy(_reflect, 0, result._reflect, 0,
+                              _reflect.length);
+            System.arraycopy(_exit, 0, result._exit, 0, _exit.length);
+            result._stale = false;
+        }
+        return result;
+    }
+
+    /** Fill my fused tables for my current settings, if they are used
+     *  and not current, so that copies start with them. */
+    void prepare() {
+        if (_entry != null && _stale) {
+            _spec.fuse(_settings, _entry, _reflect, _exit);
+            _stale = false;
+        }
+    }
+
+    /** Return the current setting of the rotor in slot K. */
+    int setting(int k) {
+        return _settings[k];
+    }
+
+    /** Return a copy of the settings of all rotor slots. */
+    int[] settings() {
+        return _settings.clone();
+    }
+
+    /** Return the settings of all rotor slots packed into one long (see
+     *  MachineSpec.pack), for saving and later restoring with
+     *  setOdometer.  Requires spec().packable(). */
+    long odometer() {
+        if (!_packed) {
+            throw error("rotor settings too large to pack");
+        }
+        return _odometer;
+    }
+
+    /** Set all my rotor slots to the settings packed in ODOMETER, as
+     *  returned by odometer(). */
+    void setOdometer(long odometer) {
+        int[] settings = new int[_settings.length];
+        _spec.unpack(odometer, settings);
+        for (int k = 0; k < settings.length; k += 1) {
+            set(k, settings[k]);
+        }
+    }
+
+    /** Set the rotor in slot K to setting POSN. */
+    void set(int k, int posn) {
+        if (posn != 0 && _spec.rotor(k).reflecting()) {
+            throw error("reflector has only one position");
+        }
+        _settings[k] = posn;
+        _stale |= _entry != null && _spec.isStatic(k);
+        _table = null;
+        if (_packed) {
+            _odometer = _spec.pack(_settings);
+        }
+    }
+
+    /** Set the rotor in each slot k to SETTINGS[k], as if by set(k, ...)
+     *  for each k, but more cheaply. */
+    void set(int[] settings) {
+        for (int k = 0; k < _settings.length; k += 1) {
+            if (settings[k] != _settings[k]) {
+                if (settings[k] != 0 && _spec.rotor(k).reflecting()) {
+                    throw error("reflector has only one position");
+                }
+                _stale |= _entry != null && _spec.isStatic(k);
+                _settings[k] = settings[k];
+            }
+        }
+        _table = null;
+        if (_packed) {
+            _odometer = _spec.pack(_settings);
+        }
+    }
+
+    /** Convert with tables from CACHE, which must serve a spec equal to
+     *  mine, or stop using a cache if CACHE is null. */
+    void useCache(KeystreamCache cache) {
+        if (cache != null && !cache.spec().equals(_spec)) {
+            throw error("keystream cache is for a different machine");
+        }
+        _cache = cache;
+        _table = null;
+    }
+
+    /** Set my rotors according to SETTING, which must be a string of
+     *  numRotors()-1 characters in my alphabet. The first letter refers
+     *  to the leftmost rotor setting (not counting the reflector).  */
+    void setRotors(String setting) {
+        String[] withring = setting.split(" ");
+        if (withring[0].length() != _spec.numRotors() - 1) {
+            throw new EnigmaException("Wrong length of string");
+        }
+        if (withring.length == 2) {
+            for (int i = 0; i < withring[1].length(); i++) {
+                char mychar = withring[1].charAt(i);
+                int intchar = _alphabet.toInt(mychar);
+                int origcharint = _alphabet.toInt(withring[0].charAt(i));
+                set(i + 1, (intchar + origcharint) % _alphabet.size());
+            }
+
+        }
+        for (int i = 0; i < withring[0].length(); i++) {
+            char mychar = withring[0].charAt(i);
+            if (!_alphabet.contains(mychar)) {
+                throw new EnigmaException("Letter not in alphabet");
+            }
+            set(i + 1, _alphabet.toInt(mychar));
+        }
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the rotors. */
+    int convert(int c) {
+        boolean carried = stepRotors();
+        if (_cache != null) {
+            if (carried || _table == null) {
+                _table = _cache.table(_settings);
+            }
+            return _table[_settings[_settings.length - 1]
+                          * _alphabet.size() + c];
+        }
+        return scramble(c);
+    }
+
+    /** Advance the rotors as for one keystroke.  Returns true iff any
+     *  rotor other than the rightmost moved. */
+    private boolean stepRotors() {
+        if (!_packed) {
+            return _spec.step(_settings);
+        }
+        long next = _spec.step(_odometer);
+        boolean carried = _spec.carried(_odometer, next);
+        _odometer = next;
+        if (carried) {
+            _spec.unpack(next, _settings);
+        } else {
+            _settings[_settings.length - 1] = _spec.fastSetting(next);
+        }
+        return carried;
+    }
+
+    /** Return the conversion of C at the current settings, without the
+     *  keystream cache. */
+    private int scramble(int c) {
+        if (_entry == null) {
+            return _spec.scramble(c, _settings);
+        }
+        if (_stale) {
+            _spec.fuse(_settings, _entry, _reflect, _exit);
+            _stale = false;
+        }
+        return _spec.scramble(c, _settings, _entry, _reflect, _exit);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF, skipping blanks,
+     *  and store the results in OUT starting at OUTOFF, updating my
+     *  settings accordingly.  Returns the number of characters stored.
+     *  IN and OUT may be the same array, provided that OUTOFF <= OFF. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        int k = outOff;
+        for (int i = off; i < off + len; i += 1) {
+            char c = in[i];
+            if (c != ' ') {
+                out[k] = _alphabet.toChar(convert(_alphabet.toInt(c)));
+                k += 1;
+            }
+        }
+        return k - outOff;
+    }
+
+    /** Convert the LEN bytes of BUF starting at OFF in place, taking each
+     *  unsigned byte value as an index in my alphabet, which must be an
+     *  alphabet of bytes, and update my settings accordingly. */
+    void convert(byte[] buf, int off, int len) {
+        for (int i = off; i < off + len; i += 1) {
+            buf[i] = (byte) convert(buf[i] & BYTE_MASK);
+        }
+    }
+
+    /** Convert the bytes remaining in IN as for convert(byte[], int, int)
+     *  and put the results into OUT, updating my settings accordingly.
+     *  Stops when IN is exhausted or OUT is full.  Returns the number of
+     *  bytes converted.  IN and OUT may share their contents, provided
+     *  that OUT's position is at most IN's. */
+    int convert(ByteBuffer in, ByteBuffer out) {
+        int n = Math.min(in.remaining(), out.remaining());
+        int from = in.position(), to = out.position();
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            byte[] src = in.array(), dst = out.array();
+            int inOff = in.arrayOffset() + from;
+            int outOff = out.arrayOffset() + to;
+            for (int i = 0; i < n; i += 1) {
+                dst[outOff + i] = (byte) convert(src[inOff + i] & BYTE_MASK);
+            }
+        } else {
+            for (int i = 0; i < n; i += 1) {
+                out.put(to + i, (byte) convert(in.get(from + i) & BYTE_MASK));
+            }
+        }
+        in.position(from + n);
+        out.position(to + n);
+        return n;
+    }
+
+    /** Advance my rotors to the settings they would have after
+     *  converting N more characters, without converting anything. */
+    void advance(long n) {
+        if (_after == null) {
+            _after = new int[_settings.length];
+            _scratch = _spec.newScratch();
+        }
+        _spec.settingsAfter(_settings, n, _after, _scratch);
+        System.arraycopy(_after, 0, _settings, 0, _after.length);
+        _table = null;
+        if (_packed) {
+            _odometer = _spec.pack(_settings);
+        }
+    }
+
+    /** Return the settings of my rotors after converting OFFSET more
+     *  characters, as a string of numRotors()-1 characters in my alphabet
+     *  suitable for setRotors.  Does not change my state. */
+    String positionAt(long offset) {
+        int[] settings = _spec.settingsAfter(_settings, offset);
+        char[] result = new char[settings.length - 1];
+        for (int i = 1; i < settings.length; i += 1) {
+            result[i - 1] = _alphabet.toChar(settings[i]);
+        }
+        return new String(result);
+    }
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** The spec whose rotors I set. */
+    private final MachineSpec _spec;
+
+    /** Alphabet of _spec. */
+    private final Alphabet _alphabet;
+
+    /** The setting of the rotor in each slot. */
+    private final int[] _settings;
+
+    /** Conversions by the static rotors at the current settings, as
+     *  filled by MachineSpec.fuse, or null if the spec is not fusable. */
+    private int[] _entry, _reflect, _exit;
+
+    /** True iff the settings of static rotors have changed since _entry,
+     *  _reflect, and _exit were filled. */
+    private boolean _stale;
+
+    /** True iff my settings are also kept packed in _odometer, which
+     *  is then the source of truth for stepping. */
+    private final boolean _packed;
+
+    /** My settings packed as by MachineSpec.pack, if _packed. */
+    private long _odometer;
+
+    /** Settings computed by advance, or null until it is first called. */
+    private int[] _after;
+    /** Work space for advance, or null until it is first called. */
+    private long[] _scratch;
+
+    /** Source of whole-machine conversion tables, or null. */
+    private KeystreamCache _cache;
+
+    /** The table from _cache for the current settings of all but the
+     *  rightmost rotor, or null if not yet fetched. */
+    private int[] _table;
+}
@@ -0,0 +1,412 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Lisa Sam Wang
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Notches of the naval rotors. */
+    private static final HashMap<String, String> NOTCHES = new HashMap<>();
+    static {
+        NOTCHES.put("I", "Q");
+        NOTCHES.put("II", "E");
+        NOTCHES.put("III", "V");
+        NOTCHES.put("IV", "J");
+        NOTCHES.put("V", "Z");
+        NOTCHES.put("VI", "ZM");
+        NOTCHES.put("VII", "ZM");
+        NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return a 5-slot, 3-pawl machine holding all the naval rotors, set
+     *  up with rotors ROTORS at SETTING and with plugboard PLUGBOARD. */
+    private Machine navalMachine(String[] rotors, String setting,
+                                 String plugboard) {
+        ArrayList<Rotor> all = new ArrayList<>();
+        for (String name : NAVALA.keySet()) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (NOTCHES.containsKey(name)) {
+                all.add(new MovingRotor(name, perm, NOTCHES.get(name)));
+            } else if (name.equals("B") || name.equals("C")) {
+                all.add(new Reflector(name, perm));
+            } else {
+                all.add(new FixedRotor(name, perm));
+            }
+        }
+        Machine mach = new Machine(UPPER, 5, 3, all);
+        mach.insertRotors(rotors);
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation(plugboard, UPPER));
+        return mach;
+    }
+
+    /** Rotors used in the sample messages. */
+    private static final String[] SAMPLE =
+        { "B", "Beta", "III", "IV", "I" };
+
+    /** Plugboard used in the sample messages. */
+    private static final String SAMPLE_PLUGS =
+        "(HQ) (EX) (IP) (TR) (BY)";
+
+    /** A message long enough to step every rotor. */
+    private static final String LONG_MSG;
+    static {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 3000; i += 1) {
+            msg.append(UPPER_STRING.charAt((i * 7 + i / 26) % 26));
+        }
+        LONG_MSG = msg.toString();
+    }
+
+    /** Return the settings of the rotors of MACH as a string. */
+    private String settings(Machine mach) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < mach.numRotors(); i += 1) {
+            result.append(mach.alphabet().toChar(mach.state().setting(i)));
+        }
+        return result.toString();
+    }
+
+    /** Return a machine over the alphabet ABCDEF with slots for a
+     *  reflector and four rotors, all of which move, with notches
+     *  that exercise double stepping and wrap-around. */
+    private Machine smallMachine() {
+        Alphabet alpha = new Alphabet("ABCDEF");
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("R", new Permutation("(AB)(CD)(EF)", alpha)));
+        all.add(new MovingRotor("P", new Permutation("(ABC)", alpha),
+                                "AD"));
+        all.add(new MovingRotor("Q", new Permutation("(AF)(BD)", alpha),
+                                "C"));
+        all.add(new MovingRotor("S", new Permutation("(ACEBDF)", alpha),
+                                "FAB"));
+        all.add(new MovingRotor("T", new Permutation("", alpha), "E"));
+        Machine mach = new Machine(alpha, 5, 4, all);
+        mach.insertRotors(new String[] { "R", "P", "Q", "S", "T" });
+        mach.setPlugboard(new Permutation("", alpha));
+        return mach;
+    }
+
+    /** Check that advancing MACH by each of the counts in STEPS gives the
+     *  same settings as converting that many characters. */
+    private void checkAdvance(Machine mach, String start, int... steps) {
+        for (int n : steps) {
+            mach.setRotors(start);
+            String expected = mach.positionAt(n);
+            assertEquals(msg("positionAt", "%s + %d", start, n),
+                         start, settings(mach));
+            for (int i = 0; i < n; i += 1) {
+                mach.convert(0);
+            }
+            String stepped = settings(mach);
+            assertEquals(msg("advance", "%s + %d", start, n),
+                         stepped, expected);
+            mach.setRotors(start);
+            mach.advance(n);
+            assertEquals(msg("advance", "%s + %d", start, n),
+                         stepped, settings(mach));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkHelloWorld() {
+        Machine mach = navalMachine(new String[] {
+            "B", "Beta", "I", "II", "III" }, "AAAA", "");
+        assertEquals("ILBDAAMTAZ", mach.convert("HELLO WORLD"));
+    }
+
+    @Test
+    public void checkSample() {
+        Machine mach = navalMachine(SAMPLE, "AXLE", SAMPLE_PLUGS);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     mach.convert("FROM HIS SHOULDER HIAWATHA"));
+    }
+
+    @Test
+    public void checkBulkArrays() {
+        String expected =
+            navalMachine(SAMPLE, "AXLE", SAMPLE_PLUGS).convert(LONG_MSG);
+        Machine mach = navalMachine(SAMPLE, "AXLE", SAMPLE_PLUGS);
+        char[] in = ("  " + LONG_MSG).toCharArray();
+        char[] out = new char[in.length + 3];
+        int n = mach.convert(in, 2, in.length - 2, out, 3);
+        assertEquals(LONG_MSG.length(), n);
+        assertEquals(expected, new String(out, 3, n));
+    }
+
+    @Test
+    public void checkBulkBuffers() {
+        String expected =
+            navalMachine(SAMPLE, "AXLE", SAMPLE_PLUGS).convert(LONG_MSG);
+        Machine mach = navalMachine(SAMPLE, "AXLE", SAMPLE_PLUGS);
+        CharBuffer in = CharBuffer.wrap(LONG_MSG);
+        CharBuffer out = CharBuffer.allocate(1000);
+        StringBuilder result = new StringBuilder();
+        while (in.hasRemaining()) {
+            mach.convert(in, out);
+            out.flip();
+            result.append(out);
+            out.clear();
+        }
+        assertEquals(expected, result.toString());
+    }
+
+    @Test
+    public void checkParallel() {
+        StringBuilder msg = new StringBuilder();
+        while (msg.length() < 2 * Machine.PARALLEL_THRESHOLD) {
+            msg.append(LONG_MSG).append(' ');
+        }
+        Machine seq = navalMachine(SAMPLE, "AXLE", SAMPLE_PLUGS);
+        Machine par = navalMachine(SAMPLE, "AXLE", SAMPLE_PLUGS);
+        for (int k = 0; k < 2; k += 1) {
+            assertEquals(seq.convert(msg.toString()),
+                         par.convertParallel(msg.toString()));
+            assertEquals(settings(seq), settings(par));
+        }
+    }
+
+    @Test
+    public void checkSharedSpec() throws InterruptedException {
+        Machine mach = navalMachine(SAMPLE, "AXLE", SAMPLE_PLUGS);
+        String expected = mach.convert(LONG_MSG);
+        mach.setRotors("AXLE");
+        MachineSpec spec = mach.spec();
+        String[] results = new String[4];
+        Thread[] threads = new Thread[results.length];
+        for (int k = 0; k < threads.length; k += 1) {
+            final int j = k;
+            threads[k] = new Thread(() -> {
+                MachineState state = spec.newState();
+                state.setRotors("AXLE");
+                char[] buf = LONG_MSG.toCharArray();
+                int n = state.convert(buf, 0, buf.length, buf, 0);
+                results[j] = new String(buf, 0, n);
+            });
+            threads[k].start();
+        }
+        for (int k = 0; k < threads.length; k += 1) {
+            threads[k].join();
+            assertEquals(expected, results[k]);
+        }
+    }
+
+    @Test
+    public void checkWithPlugboard() {
+        Machine mach = navalMachine(SAMPLE, "AXLE", SAMPLE_PLUGS);
+        String expected = mach.convert(LONG_MSG);
+        MachineSpec plain = navalMachine(SAMPLE, "AXLE", "").spec();
+        MachineSpec spec = plain.withPlugboard(mach.spec().plugboard());
+        MachineState state = spec.newState();
+        state.setRotors("AXLE");
+        char[] buf = LONG_MSG.toCharArray();
+        int n = state.convert(buf, 0, buf.length, buf, 0);
+        assertEquals(expected, new String(buf, 0, n));
+    }
+
+    @Test
+    public void checkFusedStages() {
+        Alphabet alpha = new Alphabet("ABCDEF");
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("R", new Permutation("(AB)(CD)(EF)", alpha)));
+        all.add(new FixedRotor("F", new Permutation("(ABCDEF)", alpha)));
+        all.add(new FixedRotor("G", new Permutation("(AC)(BE)", alpha)));
+        all.add(new MovingRotor("P", new Permutation("(ABC)", alpha),
+                                "AD"));
+        all.add(new MovingRotor("Q", new Permutation("(AF)(BD)", alpha),
+                                "C"));
+        String[][] orders = {
+            { "R", "F", "P", "G", "Q" }, { "R", "P", "Q", "F", "G" },
+            { "R", "F", "G", "P", "Q" },
+        };
+        for (String[] order : orders) {
+            Machine mach = new Machine(alpha, 5, 2, all);
+            mach.insertRotors(order);
+            mach.setRotors("BCDE");
+            mach.setPlugboard(new Permutation("(AE)(BF)", alpha));
+            MachineSpec spec = mach.spec();
+            int[] settings = mach.state().settings();
+            for (int i = 0; i < 500; i += 1) {
+                int c = (i * 5 + i / 7) % alpha.size();
+                spec.step(settings);
+                assertEquals(msg(String.join(" ", order), "char %d", i),
+                             spec.scramble(c, settings), mach.convert(c));
+            }
+        }
+    }
+
+    @Test
+    public void checkNavalAdvance() {
+        Machine mach = navalMachine(SAMPLE, "AAAA", "");
+        checkAdvance(mach, "AXLE", 0, 1, 2, 25, 26, 27, 700, 16900, 20000);
+        checkAdvance(mach, "ADUP", 1, 2, 3, 5000);
+        mach = navalMachine(new String[] {
+            "B", "Beta", "VI", "VII", "VIII" }, "AAAA", "");
+        checkAdvance(mach, "AZLM", 1, 13, 14, 40, 676, 9999);
+    }
+
+    @Test
+    public void checkSmallAdvance() {
+        Machine mach = smallMachine();
+        for (String start : new String[] { "AAAA", "DCFE", "FFFF", "CBAD" }) {
+            checkAdvance(mach, start, 0, 1, 2, 3, 5, 6, 7, 35, 36, 37,
+                         215, 216, 1295, 1296, 5000);
+        }
+    }
+
+    @Test
+    public void checkLongAdvance() {
+        Machine mach = navalMachine(SAMPLE, "AXLE", "");
+        long n = 123456789012345L;
+        String far = mach.positionAt(n);
+        mach.advance(n);
+        assertEquals(far, settings(mach));
+        mach.setRotors("AXLE");
+        mach.advance(n - 1000);
+        for (int i = 0; i < 1000; i += 1) {
+            mach.convert(0);
+        }
+        assertEquals(far, settings(mach));
+    }
+
+    @Test
+    public void checkKeystreamCache() {
+        Machine plain = navalMachine(SAMPLE, "AXLE", SAMPLE_PLUGS);
+        Machine cached = navalMachine(SAMPLE, "AXLE", SAMPLE_PLUGS);
+        int tableBytes = 26 * 26 * Integer.BYTES;
+        cached.setKeystreamBudget(2 * tableBytes);
+        assertEquals(plain.convert(LONG_MSG), cached.convert(LONG_MSG));
+        plain.setRotors("AXLE");
+        cached.setRotors("AXLE");
+        assertEquals(plain.convertParallel(LONG_MSG + LONG_MSG),
+                     cached.convertParallel(LONG_MSG + LONG_MSG));
+        KeystreamCache cache =
+            new KeystreamCache(cached.spec(), 2 * tableBytes);
+        int[] settings = new int[5];
+        for (int k = 0; k < 3; k += 1) {
+            settings[3] = k;
+            cache.table(settings);
+        }
+        assertEquals(2, cache.tables());
+    }
+
+    @Test
+    public void checkOdometer() {
+        Machine[] machs = { navalMachine(SAMPLE, "AXLE", ""),
+                            smallMachine() };
+        for (Machine mach : machs) {
+            MachineSpec spec = mach.spec();
+            assertTrue(spec.packable());
+            int[] settings = mach.state().settings();
+            long odometer = spec.pack(settings);
+            for (int i = 0; i < LONG_MSG.length(); i += 1) {
+                long next = spec.step(odometer);
+                boolean carried = spec.step(settings);
+                assertEquals(carried, spec.carried(odometer, next));
+                odometer = next;
+                assertEquals(spec.pack(settings), odometer);
+            }
+            String text = LONG_MSG.replaceAll("[^A-F]", "");
+            MachineState state = mach.state();
+            long saved = state.odometer();
+            String msg = mach.convert(text);
+            state.setOdometer(saved);
+            assertEquals(msg, mach.convert(text));
+        }
+    }
+
+    @Test
+    public void checkRestore() {
+        Machine mach = navalMachine(SAMPLE, "AXLE", SAMPLE_PLUGS);
+        MachineState saved = mach.state().copy();
+        saved.prepare();
+        String msg = mach.convert(LONG_MSG);
+        Machine other = navalMachine(new String[] { "B", "Beta", "I", "II",
+                                                    "III" }, "AAAA", "");
+        for (int i = 0; i < 2; i += 1) {
+            other.restore(saved);
+            assertEquals(msg, other.convert(LONG_MSG));
+        }
+        assertSame(mach.spec(), other.spec());
+    }
+
+    /** Return a random permutation of ALPHA made with RANDOM, which is
+     *  an involution without fixed points if REFLECT. */
+    private Permutation randomPermutation(Alphabet alpha, Random random,
+                                          boolean reflect) {
+        int[] order = new int[alpha.size()];
+        for (int i = 0; i < order.length; i += 1) {
+            int j = random.nextInt(i + 1);
+            order[i] = order[j];
+            order[j] = i;
+        }
+        int[] forward = new int[order.length];
+        for (int i = 0; i < order.length; i += 1) {
+            if (reflect) {
+                forward[order[i]] = order[i ^ 1];
+            } else {
+                forward[order[i]] = order[(i + 1) % order.length];
+            }
+        }
+        return new Permutation(forward, alpha);
+    }
+
+    @Test
+    public void checkByteConversion() {
+        Alphabet bytes = Alphabet.bytes();
+        assertTrue(bytes.isBytes());
+        assertFalse(UPPER.isBytes());
+        Random random = new Random(17);
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("R", randomPermutation(bytes, random, true)));
+        all.add(new MovingRotor("P", randomPermutation(bytes, random, false),
+                                "\u0000\u0080"));
+        all.add(new MovingRotor("Q", randomPermutation(bytes, random, false),
+                                "\u00ff"));
+        Machine mach = new Machine(bytes, 3, 2, all);
+        mach.insertRotors(new String[] { "R", "P", "Q" });
+        mach.setPlugboard(randomPermutation(bytes, random, true));
+        byte[] data = new byte[LONG_MSG.length() * 40];
+        random.nextBytes(data);
+        mach.setRotors("\u00fe\u0010");
+        byte[] expected = new byte[data.length];
+        for (int i = 0; i < data.length; i += 1) {
+            expected[i] = (byte) mach.convert(data[i] & 0xff);
+        }
+        mach.setRotors("\u00fe\u0010");
+        byte[] buf = data.clone();
+        mach.convert(buf, 0, buf.length);
+        assertArrayEquals(expected, buf);
+        mach.setRotors("\u00fe\u0010");
+        ByteBuffer in = ByteBuffer.allocateDirect(data.length);
+        ByteBuffer out = ByteBuffer.allocateDirect(data.length);
+        in.put(expected).flip();
+        assertEquals(data.length, mach.convert(in, out));
+        out.flip();
+        byte[] back = new byte[data.length];
+        out.get(back);
+        assertArrayEquals(data, back);
+    }
+
+}
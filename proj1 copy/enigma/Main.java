@@ -4,8 +4,15 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 
-import java.util.ArrayList;
-import java.util.NoSuchElementException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Arrays;
 import java.util.Scanner;
 
 import static enigma.EnigmaException.*;
@@ -16,17 +23,84 @@ import static enigma.EnigmaException.*;
 public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
+     *  specified by ARGS, where 1 <= ARGS.length <= 3 after any leading
+     *  options.
      *  ARGS[0] is the name of a configuration file.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  Options, which precede the file names, are
+     *    --stream    read and write the messages through channels in
+     *                constant memory (see StreamingProcessor).
+     *    --pipeline  as for --stream, but parse the input, convert it,
+     *                and format and write the output on three threads
+     *                (see PipelinedProcessor).
+     *    --lanes     read all the messages first, and convert those
+     *                with the same rotors and plugboard together in
+     *                lockstep (see LaneBatch).
+     *    --bytes=SETTINGS  convert the input as binary data with a
+     *                machine whose configuration file begins with
+     *                *BYTES instead of an alphabet, so that its alphabet
+     *                is the 256 byte values, and whose cycles and notches
+     *                give each byte as two hexadecimal digits.  SETTINGS
+     *                is a settings line in the same notation (the
+     *                leading '*' optional), and ARGS[1] and ARGS[2],
+     *                when files, are memory-mapped (see ByteProcessor).
+     *    --compile=FILE  instead of converting, write the configuration
+     *                as a compiled configuration to FILE (see
+     *                CompiledConfig).  A compiled configuration may be
+     *                given in place of a configuration file, and is
+     *                loaded by memory-mapping it.
+     *    --index=FILE  instead of converting, write an index of the
+     *                messages in input file ARGS[1] to FILE (see
+     *                MessageIndex).
+     *    --message=K[:FROM-TO]  with --index, convert only message K
+     *                (numbered from 0) of ARGS[1], or only its characters
+     *                FROM through TO-1, not counting blanks, which are
+     *                printed as one line.
+     *    --batch     convert each file in directory ARGS[1] (or each
+     *                file named on a line of file ARGS[1]) into the file
+     *                of the same name in directory ARGS[2], all in this
+     *                process (see BatchProcessor).
+     *    --serve=ADDRESS  instead of converting, serve requests to
+     *                convert messages on the Unix-domain socket ADDRESS,
+     *                or on loopback TCP port ADDRESS if it is a numeral,
+     *                until killed (see EnigmaServer).  ARGS then holds
+     *                only the configuration file.
+     *    --client=ADDRESS  convert the input as usual, but by sending
+     *                each message to the server at ADDRESS.  ARGS then
+     *                holds only the optional input and output files.
+     *    --cache=MB  convert with a keystream cache of up to MB megabytes
+     *                for each daily key (see KeystreamCache).
+     *    --crib=N:TEXT  instead of converting the input, treat it (less
+     *                any settings lines) as one ciphertext, and print the
+     *                settings line of each rotor order and starting
+     *                setting under which it decrypts to TEXT at position
+     *                N (see KeySearch), reporting progress on the
+     *                standard error.
+     *    --bombe     with --crib, instead run a bombe (see Bombe) on the
+     *                rotor order of the first settings line of the input,
+     *                and print a settings line for each stop, with the
+     *                plugboard pairs it implies.
+     *    --hillclimb=CORPUS  instead of converting the input, attack the
+     *                ciphertext in it with the rotor order of its first
+     *                settings line (see HillClimber), scoring with the
+     *                quadgrams of the text in file CORPUS, and print the
+     *                settings line found and the decrypted message.
+     *    --workers=N with --crib, divide the search among N worker
+     *                processes (see SearchCoordinator).
+     *    --checkpoint=FILE  with --workers, record progress in FILE, and
+     *                resume from it if it exists.
+     *    --worker    act as a worker for a SearchCoordinator, reading
+     *                requests from the standard input (ARGS then holds
+     *                only the configuration file). */
     public static void main(String... args) {
         try {
-            new Main(args).process();
+            new Main(args).run();
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -36,11 +110,50 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int k = parseOptions(args);
+        args = Arrays.copyOfRange(args, k, args.length);
+        if (_server != null) {
+            if (args.length > 2) {
+                throw error("--client allows only input and output files");
+            }
+            _input = args.length > 0 ? getInput(args[0])
+                : new Scanner(System.in);
+            _output = args.length > 1 ? getOutput(args[1]) : System.out;
+            return;
+        }
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _configName = args[0];
+
+        if (_batch) {
+            if (args.length != 3) {
+                throw error("--batch requires input and output names");
+            }
+            _inputName = args[1];
+            _outputName = args[2];
+            return;
+        }
+
+        if (_indexName != null) {
+            if (args.length < 2) {
+                throw error("--index requires an input file");
+            }
+            _inputName = args[1];
+            _output = args.length > 2 ? getOutput(args[2]) : System.out;
+            return;
+        } else if (_message >= 0) {
+            throw error("--message requires --index");
+        }
+
+        if (_streaming || _pipelined || _byteKey != null) {
+            _inChannel = args.length > 1 ? getInputChannel(args[1])
+                : Channels.newChannel(System.in);
+            _outChannel = args.length > 2 ? getOutputChannel(args[2])
+                : Channels.newChannel(System.out);
+            return;
+        }
 
         if (args.length > 1) {
             _input = getInput(args[1]);
@@ -55,6 +168,169 @@ public final class Main {
         }
     }
 
+    /** Record the leading options in ARGS (see comment on main), and
+     *  return the index of the first argument that is not an option. */
+    private int parseOptions(String[] args) {
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+            String opt = args[k];
+            if (opt.equals("--stream")) {
+                _streaming = true;
+            } else if (opt.startsWith("--hillclimb=")) {
+                _corpus = opt.substring("--hillclimb=".length());
+            } else if (opt.equals("--worker")) {
+                _worker = true;
+            } else if (opt.startsWith("--workers=")) {
+                _workers = count(opt.substring("--workers=".length()));
+            } else if (opt.startsWith("--checkpoint=")) {
+                _checkpoint = opt.substring("--checkpoint=".length());
+            } else if (opt.startsWith("--bytes=")) {
+                _byteKey = opt.substring("--bytes=".length());
+            } else if (opt.startsWith("--compile=")) {
+                _compileTo = opt.substring("--compile=".length());
+            } else if (opt.startsWith("--index=")) {
+                _indexName = opt.substring("--index=".length());
+            } else if (opt.startsWith("--message=")) {
+                parseMessage(opt.substring("--message=".length()));
+            } else if (opt.startsWith("--serve=")) {
+                _listen = opt.substring("--serve=".length());
+            } else if (opt.startsWith("--client=")) {
+                _server = opt.substring("--client=".length());
+            } else if (opt.equals("--pipeline")) {
+                _pipelined = true;
+            } else if (opt.equals("--batch")) {
+                _batch = true;
+            } else if (opt.equals("--lanes")) {
+                _lanes = true;
+            } else if (opt.equals("--bombe")) {
+                _bombe = true;
+            } else if (opt.startsWith("--crib=")) {
+                parseCrib(opt.substring("--crib=".length()));
+            } else if (opt.startsWith("--cache=")) {
+                _cacheBytes = megabytes(opt.substring("--cache=".length()));
+            } else {
+                throw error("unknown option %s", opt);
+            }
+        }
+        return k;
+    }
+
+    /** Return the number of bytes in AMOUNT megabytes, where AMOUNT is
+     *  a non-negative integer numeral. */
+    private static long megabytes(String amount) {
+        try {
+            long mb = Long.parseLong(amount);
+            if (mb < 0 || mb > Long.MAX_VALUE / MEGABYTE) {
+                throw error("bad cache size: %s", amount);
+            }
+            return mb * MEGABYTE;
+        } catch (NumberFormatException excp) {
+            throw error("bad cache size: %s", amount);
+        }
+    }
+
+    /** Return the positive integer denoted by NUMERAL. */
+    private static int count(String numeral) {
+        try {
+            int n = Integer.parseInt(numeral);
+            if (n <= 0) {
+                throw error("bad count: %s", numeral);
+            }
+            return n;
+        } catch (NumberFormatException excp) {
+            throw error("bad count: %s", numeral);
+        }
+    }
+
+    /** Record the message selected by MESSAGE, of the form K or
+     *  K:FROM-TO. */
+    private void parseMessage(String message) {
+        int colon = message.indexOf(':');
+        try {
+            if (colon < 0) {
+                _message = Integer.parseInt(message);
+            } else {
+                _message = Integer.parseInt(message.substring(0, colon));
+                int dash = message.indexOf('-', colon);
+                _from = Long.parseLong(message.substring(colon + 1, dash));
+                _to = Long.parseLong(message.substring(dash + 1));
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException excp) {
+            throw error("bad message: %s", message);
+        }
+        if (_message < 0 || colon >= 0 && (_from < 0 || _to < _from)) {
+            throw error("bad message: %s", message);
+        }
+    }
+
+    /** Record the crib described by CRIB, of the form N:TEXT. */
+    private void parseCrib(String crib) {
+        int colon = crib.indexOf(':');
+        try {
+            _cribOffset = Integer.parseInt(crib.substring(0, colon));
+            _crib = crib.substring(colon + 1);
+        } catch (NumberFormatException | IndexOutOfBoundsException excp) {
+            throw error("bad crib: %s", crib);
+        }
+    }
+
+    /** Process the messages as directed by my options. */
+    private void run() {
+        if (_server != null) {
+            new EnigmaClient(_server).process(_input, _output);
+        } else if (_listen != null) {
+            new EnigmaServer(readConfig(), _settings::setUp,
+                             Runtime.getRuntime().availableProcessors())
+                .serve(_listen);
+        } else if (_compileTo != null) {
+            CompiledConfig.compile(_configName, _compileTo);
+        } else if (_worker) {
+            SearchCoordinator.answer(new KeySearch(readConfig()), _input,
+                                     _output);
+        } else if (_byteKey != null) {
+            Machine enigma = readConfig();
+            ByteProcessor.setUp(enigma, _byteKey);
+            new ByteProcessor(enigma).processAll(_inChannel, _outChannel);
+        } else if (_batch) {
+            new BatchProcessor(readConfig(), _settings::setUp)
+                .processAll(_inputName, _outputName);
+        } else if (_message >= 0) {
+            Machine enigma = readConfig();
+            new IndexedProcessor(_inputName, _indexName)
+                .convert(_message, _from, _to, enigma,
+                         s -> _settings.setUp(enigma, s), _output);
+        } else if (_indexName != null) {
+            new IndexedProcessor(_inputName, _indexName).index();
+        } else if (_bombe && _crib == null) {
+            throw error("--bombe requires --crib");
+        } else if (_bombe) {
+            cryptanalysis().bombe(_crib, _cribOffset);
+        } else if (_corpus != null) {
+            cryptanalysis().hillClimb(_corpus);
+        } else if (_crib != null && _workers > 0) {
+            cryptanalysis().coordinate(_configName, _workers, _checkpoint,
+                                       _crib, _cribOffset);
+        } else if (_crib != null) {
+            cryptanalysis().search(_crib, _cribOffset);
+        } else if (_streaming) {
+            Machine enigma = readConfig();
+            new StreamingProcessor(enigma, s -> _settings.setUp(enigma, s))
+                .processAll(_inChannel, _outChannel);
+        } else if (_pipelined) {
+            Machine enigma = readConfig();
+            new PipelinedProcessor(enigma, s -> _settings.setUp(enigma, s))
+                .processAll(_inChannel, _outChannel);
+        } else if (_lanes) {
+            Machine enigma = readConfig();
+            new LaneProcessor(enigma, s -> _settings.setUp(enigma, s))
+                .process(_input, _output);
+        } else {
+            Machine enigma = readConfig();
+            new TextProcessor(enigma, s -> _settings.setUp(enigma, s))
+                .process(_input, _output);
+        }
+    }
+
     /** Return a Scanner reading from the file named INNAME. */
     private Scanner getInput(String inname) {
         try {
@@ -73,190 +349,134 @@ public final class Main {
         }
     }
 
-    /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        Machine enigma = readConfig();
-        String nextl = _input.nextLine();
-        while (_input.hasNext()) {
-            String sett = nextl;
-            if (!sett.contains("*")) {
-                throw new EnigmaException("Invalid setting");
-            }
-            if (sett.startsWith("*")) {
-                setUp(enigma, sett);
-            }
-            nextl = (_input.nextLine());
-            while (nextl.isEmpty()) {
-                nextl = (_input.nextLine());
-                _output.println();
-            }
-            while (!(nextl.contains("*"))) {
-                String result = enigma.convert(nextl);
-                if (nextl.isEmpty()) {
-                    _output.println();
-                } else {
-                    printMessageLine(result);
-                }
-                if (!_input.hasNext()) {
-                    nextl = "*";
-                } else {
-                    nextl = (_input.nextLine());
-                }
-            }
-        }
-        while (_input.hasNextLine()) {
-            _output.println();
-            _input.nextLine();
-        }
-        if (!_input.hasNextLine()) {
-            if (!nextl.startsWith("*")) {
-                throw new EnigmaException("You did not put a setting!");
-            }
-        }
-    }
-
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Return a channel reading from the file named INNAME. */
+    private ReadableByteChannel getInputChannel(String inname) {
         try {
-            String alphabet = _config.next();
-            if (alphabet.contains("(")
-                    || alphabet.contains(")") || alphabet.contains("*")) {
-                throw new EnigmaException("Invalid configuration");
-            }
-            _alphabet = new Alphabet(alphabet);
-
-            if (!_config.hasNextInt()) {
-                throw new EnigmaException("Need numRotors config");
-            }
-            int numRotors = _config.nextInt();
-            if (!_config.hasNextInt()) {
-                throw new EnigmaException("Need pawls config");
-            }
-            int pawls = _config.nextInt();
-            nextconfig = _config.next();
-            while (_config.hasNext()) {
-                name = nextconfig;
-                notches = _config.next();
-                _allRotors.add(readRotor());
-            }
-            return new Machine(_alphabet, numRotors, pawls, _allRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+            return FileChannel.open(Paths.get(inname),
+                                    StandardOpenOption.READ);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", inname);
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+    /** Return a channel writing to the file named OUTNAME. */
+    private WritableByteChannel getOutputChannel(String outname) {
         try {
-            permkeys = "";
-            nextconfig = _config.next();
-            while (nextconfig.contains("(") && _config.hasNext()) {
-                permkeys = permkeys.concat(nextconfig + " ");
-                nextconfig = _config.next();
-            }
-            if (!_config.hasNext()) {
-                permkeys = permkeys.concat(nextconfig + " ");
-            }
-            if (notches.charAt(0) == 'M') {
-                return new MovingRotor(
-                        name, new Permutation(permkeys, _alphabet),
-                        notches.substring(1));
-            } else if (notches.charAt(0) == 'N') {
-                return new FixedRotor(
-                        name, new Permutation(permkeys, _alphabet));
-            } else if (notches.charAt(0) == 'R') {
-                return new Reflector(
-                        name, new Permutation(permkeys, _alphabet));
-            } else {
-                throw new EnigmaException("Invalid rotor type!");
-            }
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+            return FileChannel.open(Paths.get(outname),
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", outname);
         }
     }
 
-    /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        String[] S = settings.split(" ");
-        if (S.length - 1 < M.numRotors()) {
-            throw new EnigmaException("Wrong number of arguments in settings");
-        }
-        String[] R = new String[M.numRotors()];
-        for (int i = 1; i < M.numRotors() + 1; i++) {
-            R[i - 1] = S[i];
-        }
-        for (int i = 0; i < R.length - 1; i++) {
-            for (int k = i + 1; k < R.length; k++) {
-                if (R[i].equals(R[k])) {
-                    throw new EnigmaException("You already used this rotor");
-                }
-            }
-        }
-        M.insertRotors(R);
-        if (!M.myRotors()[0].reflecting()) {
-            throw new EnigmaException("First rotor has to be a reflector");
-        }
-        if (S.length > M.numRotors() + 2
-                && !S[M.numRotors() + 2].startsWith("(")) {
-            M.setRotors(S[M.numRotors() + 1] + " " + S[M.numRotors() + 2]);
-        }
-        M.setRotors(S[M.numRotors() + 1]);
-        if ((S.length > M.numRotors() + 2
-                && S[M.numRotors() + 2].startsWith("("))
-                || (S.length > M.numRotors() + 3
-                && S[M.numRotors() + 2].startsWith("("))) {
-            String steckered = "";
-            for (int i = M.numRotors() + 2; i < S.length; i++) {
-                steckered += S[i];
-            }
-            if (!steckered.isEmpty()) {
-                M.setPlugboard(new Permutation(steckered, _alphabet));
-            }
-        } else {
-            M.setPlugboard(new Permutation("", _alphabet));
-        }
+    /** Return the attacks on the ciphertext in _input with a machine
+     *  configured from configuration file _configName, printing to
+     *  _output. */
+    private Cryptanalysis cryptanalysis() {
+        Machine enigma = readConfig();
+        return new Cryptanalysis(enigma, s -> _settings.setUp(enigma, s),
+                                 _input, _output);
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        for (int i = 0; i < msg.length(); i += 5) {
-            if (msg.length() - i <= 5) {
-                _output.println(msg.substring(i));
-            } else {
-                _output.print(msg.substring(i, i + 5) + " ");
-            }
-        }
+    /** Return an Enigma machine configured from the contents of configuration
+     *  file _configName (see ConfigReader). */
+    private Machine readConfig() {
+        Machine enigma =
+            new ConfigReader(_configName, _byteKey != null).read();
+        enigma.setKeystreamBudget(_cacheBytes);
+        return enigma;
     }
 
-    /** Alphabet used in this machine. */
-    private Alphabet _alphabet;
+    /** Number of bytes in a megabyte. */
+    private static final long MEGABYTE = 1 << 20;
 
-    /** Source of input messages. */
-    private Scanner _input;
+    /** Name of the configuration file. */
+    private String _configName;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** True iff acting as a worker for a SearchCoordinator. */
+    private boolean _worker;
 
-    /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    /** Number of worker processes for a search, or 0 to search in this
+     *  process. */
+    private int _workers;
+
+    /** Name of the checkpoint file of a coordinated search, or null. */
+    private String _checkpoint;
+
+    /** Known plaintext for a key search, or null if not searching. */
+    private String _crib;
+
+    /** Position of _crib in the ciphertext. */
+    private int _cribOffset;
+
+    /** Name of the corpus file for a ciphertext-only attack, or null. */
+    private String _corpus;
+
+    /** True iff the crib is used to run a bombe rather than a search. */
+    private boolean _bombe;
+
+    /** File named by --compile, or null. */
+    private String _compileTo;
+
+    /** Settings line of --bytes, or null. */
+    private String _byteKey;
+
+    /** Address on which to serve requests, or null. */
+    private String _listen;
+
+    /** Address of the server to which to send requests, or null. */
+    private String _server;
+
+    /** Name of the message index file, or null. */
+    private String _indexName;
 
-    /** Arraylist with all rotors. */
-    private ArrayList<Rotor> _allRotors = new ArrayList<>();
+    /** Name of the input file, when indexed, or of the inputs of a
+     *  batch. */
+    private String _inputName;
 
-    /** Next token of configuration. */
-    private String nextconfig;
+    /** Name of the output directory of a batch. */
+    private String _outputName;
 
-    /** Current rotor's name to be set. */
-    private String name;
+    /** True iff converting a batch of files. */
+    private boolean _batch;
 
-    /** Notches of current rotor and rotor type. */
-    private String notches;
+    /** Number of the message selected by --message, or -1 if none. */
+    private int _message = -1;
 
-    /** String with the cycles. */
-    private String permkeys;
+    /** First character of _message to convert. */
+    private long _from;
+
+    /** Character of _message just past those to convert, or -1 to
+     *  convert the whole message. */
+    private long _to = -1;
+
+    /** True iff messages are converted in lockstep batches. */
+    private boolean _lanes;
+
+    /** True iff messages are processed by a PipelinedProcessor. */
+    private boolean _pipelined;
+
+    /** True iff messages are processed by a StreamingProcessor. */
+    private boolean _streaming;
+
+    /** Memory budget in bytes of each keystream cache (0 for none). */
+    private long _cacheBytes;
+
+    /** Sets up machines by settings lines. */
+    private final Settings _settings = new Settings();
+
+    /** Source of input messages. */
+    private Scanner _input;
+
+    /** Source of input messages when streaming. */
+    private ReadableByteChannel _inChannel;
+
+    /** Destination of processed messages when streaming. */
+    private WritableByteChannel _outChannel;
+
+    /** File for encoded/decoded messages. */
+    private PrintStream _output;
 }
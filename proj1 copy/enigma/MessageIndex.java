@@ -0,0 +1,475 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** An index of the messages in a file of settings lines and messages,
+ *  so that any one message, or any range of characters in it, can be
+ *  converted without reading the file from the top.  A message is a
+ *  settings line (one starting with '*') and the lines that follow it up
+ *  to the next.  For each message, the index records the byte offsets
+ *  of its body, its settings line, the number of characters converted in
+ *  all earlier messages, and marks giving the byte offset of a line
+ *  start about every STRIDE characters, with the number of characters
+ *  of the message before it.  To convert part of a message, the machine
+ *  is set up by its settings line and advanced directly to the first
+ *  character wanted, and only the lines between the nearest marks are
+ *  mapped and decoded.
+ *
+ *  The file's charset must encode '\n', '\r', ' ', and '*' as their
+ *  single ASCII bytes, as UTF-8 and the ISO 8859 charsets do.
+ *
+ *  An index file is a big-endian sequence of
+ *    int    MAGIC
+ *    int    VERSION
+ *    long   size of the indexed file
+ *    long   total number of characters converted in it
+ *    int    number of messages
+ *  and then, for each message,
+ *    long   offset of its body (the line after its settings line)
+ *    long   offset just past its last line
+ *    long   number of characters in earlier messages
+ *    int    length of its settings line, followed by the line's bytes
+ *    int    number of marks, followed by each mark's offset and count,
+ *           as two longs.
+ *  @author Lisa Sam Wang
+ */
+class MessageIndex {
+
+    /** Return an index of the messages in SOURCE, which is encoded in
+     *  CHARSET, with marks about every STRIDE characters. */
+    static MessageIndex build(FileChannel source, Charset charset,
+                              int stride) throws IOException {
+        byte[] delims = "\n\r *".getBytes(charset);
+        if (!Arrays.equals(delims,
+                           "\n\r *".getBytes(StandardCharsets.US_ASCII))) {
+            throw error("cannot index text in %s", charset.name());
+        }
+        return new Builder(charset, stride).scan(source);
+    }
+
+    /** Return an index of the messages in SOURCE, encoded in CHARSET,
+     *  with marks about every STRIDE characters. */
+    static MessageIndex build(FileChannel source, Charset charset)
+        throws IOException {
+        return build(source, charset, STRIDE);
+    }
+
+    /** Return the index in the index file FILE, for a file encoded in
+     *  CHARSET. */
+    static MessageIndex read(Path file, Charset charset) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        try {
+            if (in.getInt() != MAGIC) {
+                throw error("not a message index");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw error("message index has version %d, not %d",
+                            version, VERSION);
+            }
+            MessageIndex result =
+                new MessageIndex(charset, in.getLong(), in.getLong());
+            for (int n = in.getInt(); n > 0; n -= 1) {
+                long body = in.getLong(), end = in.getLong();
+                long before = in.getLong();
+                byte[] settings = new byte[count(in, 1)];
+                in.get(settings);
+                long[] marks = new long[2 * count(in, 2 * Long.BYTES)];
+                for (int i = 0; i < marks.length; i += 1) {
+                    marks[i] = in.getLong();
+                }
+                result._messages.add(
+                    new Message(new String(settings, charset), body, end,
+                                before, marks));
+            }
+            return result;
+        } catch (BufferUnderflowException excp) {
+            throw error("message index truncated");
+        }
+    }
+
+    /** An empty index of a file of SIZE bytes containing CHARS converted
+     *  characters, encoded in CHARSET. */
+    private MessageIndex(Charset charset, long size, long chars) {
+        _charset = charset;
+        _size = size;
+        _chars = chars;
+    }
+
+    /** Write me to the file FILE, replacing it. */
+    void write(Path file) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES);
+        out.putInt(MAGIC).putInt(VERSION).putLong(_size).putLong(_chars);
+        out.putInt(_messages.size());
+        try (FileChannel channel =
+             FileChannel.open(file, StandardOpenOption.WRITE,
+                              StandardOpenOption.CREATE,
+                              StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.flip();
+            drain(out, channel);
+            for (Message msg : _messages) {
+                byte[] settings = msg.settings.getBytes(_charset);
+                out = ByteBuffer.allocate(
+                    MESSAGE_BYTES + settings.length
+                    + msg.marks.length * Long.BYTES);
+                out.putLong(msg.body).putLong(msg.end).putLong(msg.before);
+                out.putInt(settings.length).put(settings);
+                out.putInt(msg.marks.length / 2);
+                for (long mark : msg.marks) {
+                    out.putLong(mark);
+                }
+                out.flip();
+                drain(out, channel);
+            }
+        }
+    }
+
+    /** Check that I index SOURCE, as far as its size shows. */
+    void check(FileChannel source) throws IOException {
+        if (source.size() != _size) {
+            throw error("message index does not match its file");
+        }
+    }
+
+    /** Return the number of messages I index. */
+    int size() {
+        return _messages.size();
+    }
+
+    /** Return the settings line of message K. */
+    String settings(int k) {
+        return message(k).settings;
+    }
+
+    /** Return the number of characters converted in message K. */
+    long length(int k) {
+        return (k + 1 < size() ? message(k + 1).before : _chars)
+            - message(k).before;
+    }
+
+    /** Return the number of characters converted in messages before
+     *  message K. */
+    long before(int k) {
+        return message(k).before;
+    }
+
+    /** Return the lines of message K of SOURCE converted by MACHINE,
+     *  less blanks, after calling SETUP with its settings line to set up
+     *  MACHINE.  Lines that consist only of blanks are omitted, so that
+     *  an empty result line stands for an empty line. */
+    List<String> convert(FileChannel source, int k, Machine machine,
+                         Consumer<String> setUp) throws IOException {
+        Message msg = message(k);
+        setUp.accept(msg.settings);
+        ArrayList<String> result = new ArrayList<>();
+        if (msg.body >= msg.end) {
+            return result;
+        }
+        String text = decode(source, msg.body, msg.end);
+        String[] lines = text.split("\n", -1);
+        int n = text.endsWith("\n") ? lines.length - 1 : lines.length;
+        for (int i = 0; i < n; i += 1) {
+            String line = lines[i];
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            String converted = machine.convert(line);
+            if (line.isEmpty() || !converted.isEmpty()) {
+                result.add(converted);
+            }
+        }
+        return result;
+    }
+
+    /** Return characters FROM through TO-1 of message K of SOURCE, not
+     *  counting blanks, converted by MACHINE after calling SETUP with the
+     *  message's settings line to set up MACHINE. */
+    String convert(FileChannel source, int k, long from, long to,
+                   Machine machine, Consumer<String> setUp)
+        throws IOException {
+        if (from < 0 || from > to || to > length(k)) {
+            throw error("characters %d-%d not in message %d", from, to, k);
+        }
+        Message msg = message(k);
+        setUp.accept(msg.settings);
+        machine.advance(from);
+        long start = msg.body, skip = from, end = msg.end;
+        for (int i = 0; i < msg.marks.length; i += 2) {
+            if (msg.marks[i + 1] <= from) {
+                start = msg.marks[i];
+                skip = from - msg.marks[i + 1];
+            } else if (msg.marks[i + 1] >= to) {
+                end = msg.marks[i];
+                break;
+            }
+        }
+        String text =
+            to == from ? "" : decode(source, start, end).replace("\r\n",
+                                                                 "\n");
+        char[] buf = new char[(int) (to - from)];
+        int n = 0;
+        for (int i = 0; n < buf.length; i += 1) {
+            if (i == text.length()) {
+                throw error("message index does not match its file");
+            }
+            char c = text.charAt(i);
+            if (c == ' ' || c == '\n') {
+                continue;
+            } else if (skip > 0) {
+                skip -= 1;
+            } else {
+                buf[n] = c;
+                n += 1;
+            }
+        }
+        return machine.convert(new String(buf));
+    }
+
+    /** Return message K. */
+    private Message message(int k) {
+        if (k < 0 || k >= size()) {
+            throw error("no message %d", k);
+        }
+        return _messages.get(k);
+    }
+
+    /** Return the text of SOURCE from byte START to byte END, which
+     *  must be a line start or the end of the file. */
+    private String decode(FileChannel source, long start, long end)
+        throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw error("message region too large to map");
+        }
+        MappedByteBuffer region =
+            source.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        try {
+            return _charset.newDecoder().decode(region).toString();
+        } catch (CharacterCodingException excp) {
+            throw error("undecodable message text: %s", excp.getMessage());
+        }
+    }
+
+    /** Write all of BUF to OUT. */
+    private static void drain(ByteBuffer buf, FileChannel out)
+        throws IOException {
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    /** Return the next int of IN, a number of items of SIZE bytes each,
+     *  checking that they fit in the rest of IN. */
+    private static int count(ByteBuffer in, int size) {
+        int n = in.getInt();
+        if (n < 0 || n > in.remaining() / size) {
+            throw error("message index truncated");
+        }
+        return n;
+    }
+
+    /** One indexed message. */
+    private static class Message {
+        /** The message with settings line SETTINGS, whose body runs from
+         *  byte BODY to byte END, preceded by BEFORE characters in other
+         *  messages, with marks MARKS. */
+        Message(String settings, long body, long end, long before,
+                long[] marks) {
+            this.settings = settings;
+            this.body = body;
+            this.end = end;
+            this.before = before;
+            this.marks = marks;
+        }
+
+        /** Settings line. */
+        private final String settings;
+        /** Offset of the line after the settings line. */
+        private final long body;
+        /** Offset just past the last line. */
+        private final long end;
+        /** Number of characters in earlier messages. */
+        private final long before;
+        /** The offset of each marked line start, followed by the number
+         *  of characters of the message before it. */
+        private final long[] marks;
+    }
+
+    /** Reads a file a block at a time, dividing it into messages. */
+    private static class Builder {
+        /** A builder for files in CHARSET marking about every STRIDE
+         *  characters. */
+        Builder(Charset charset, int stride) {
+            _charset = charset;
+            _stride = stride;
+        }
+
+        /** Return the index of the rest of SOURCE. */
+        MessageIndex scan(FileChannel source) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            long pos = 0;
+            source.position(0);
+            while (source.read(buf) >= 0) {
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    byte b = buf.get();
+                    pos += 1;
+                    if (b == '\n') {
+                        endLine(pos);
+                    } else {
+                        if (_len == _line.length) {
+                            _line = Arrays.copyOf(_line, 2 * _len);
+                        }
+                        _line[_len] = b;
+                        _len += 1;
+                    }
+                }
+                buf.clear();
+            }
+            if (_len > 0) {
+                endLine(pos);
+            }
+            endMessage(pos);
+            MessageIndex result =
+                new MessageIndex(_charset, pos, _total);
+            result._messages.addAll(_messages);
+            return result;
+        }
+
+        /** Finish the line in _line, whose next line starts at NEXT. */
+        private void endLine(long next) {
+            int len = _len;
+            if (len > 0 && _line[len - 1] == '\r') {
+                len -= 1;
+            }
+            if (len > 0 && _line[0] == '*') {
+                endMessage(_lineStart);
+                _settings = new String(_line, 0, len, _charset);
+                _body = next;
+                _chars = 0;
+                _nextMark = _stride;
+                _marks.clear();
+            } else if (_settings == null) {
+                throw error("Invalid setting");
+            } else {
+                if (_chars >= _nextMark) {
+                    _marks.add(_lineStart);
+                    _marks.add(_chars);
+                    _nextMark = _chars + _stride;
+                }
+                _chars += letters(len);
+            }
+            _lineStart = next;
+            _len = 0;
+        }
+
+        /** Return the number of characters, not counting blanks, in the
+         *  first LEN bytes of _line. */
+        private int letters(int len) {
+            int n = 0;
+            for (int i = 0; i < len; i += 1) {
+                if (_line[i] < 0) {
+                    CharBuffer text = _charset.decode(
+                        ByteBuffer.wrap(_line, 0, len));
+                    n = 0;
+                    while (text.hasRemaining()) {
+                        n += text.get() == ' ' ? 0 : 1;
+                    }
+                    return n;
+                }
+                n += _line[i] == ' ' ? 0 : 1;
+            }
+            return n;
+        }
+
+        /** Record the current message, if any, as ending at END. */
+        private void endMessage(long end) {
+            if (_settings == null) {
+                return;
+            }
+            long[] marks = new long[_marks.size()];
+            for (int i = 0; i < marks.length; i += 1) {
+                marks[i] = _marks.get(i);
+            }
+            _messages.add(new Message(_settings, _body, Math.max(_body, end),
+                                      _total, marks));
+            _total += _chars;
+        }
+
+        /** Charset of the file. */
+        private final Charset _charset;
+        /** Number of characters between marks. */
+        private final int _stride;
+        /** The messages finished so far. */
+        private final ArrayList<Message> _messages = new ArrayList<>();
+        /** The bytes of the current line. */
+        private byte[] _line = new byte[BUFFER_SIZE];
+        /** Number of bytes in _line. */
+        private int _len;
+        /** Offset of the current line. */
+        private long _lineStart;
+        /** Settings line of the current message, or null if none. */
+        private String _settings;
+        /** Offset of the body of the current message. */
+        private long _body;
+        /** Characters so far in the current message. */
+        private long _chars;
+        /** Characters in finished messages. */
+        private long _total;
+        /** Number of characters at which to place the next mark. */
+        private long _nextMark;
+        /** The marks of the current message, in pairs. */
+        private final ArrayList<Long> _marks = new ArrayList<>();
+    }
+
+    /** Identifies an index file ("EIDX"). */
+    static final int MAGIC = 0x45494458;
+
+    /** Version of the format written. */
+    static final int VERSION = 1;
+
+    /** Default number of characters between marks. */
+    static final int STRIDE = 1 << 16;
+
+    /** Size of the buffer used to read the indexed file. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Bytes in the header of an index file. */
+    private static final int HEADER_BYTES =
+        2 * Integer.BYTES + 2 * Long.BYTES + Integer.BYTES;
+
+    /** Bytes in a message's entry apart from its settings line and
+     *  marks. */
+    private static final int MESSAGE_BYTES =
+        3 * Long.BYTES + 2 * Integer.BYTES;
+
+    /** Charset of the indexed file. */
+    private final Charset _charset;
+
+    /** Size of the indexed file. */
+    private final long _size;
+
+    /** Total characters converted in the indexed file. */
+    private final long _chars;
+
+    /** The messages, in order. */
+    private final ArrayList<Message> _messages = new ArrayList<>();
+}
@@ -0,0 +1,141 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MessageIndex class.
+ *  @author Lisa Sam Wang
+ */
+public class MessageIndexTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings lines of the messages in TEXT. */
+    private static final String[] SETTINGS = {
+        "* B Beta III IV I AXLE",
+        "* B Beta I II III QRST",
+        "* B Beta II IV I ZZZZ",
+    };
+
+    /** A message of LINES lines of mixed length, some with blanks. */
+    private static String body(int lines) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i += 1) {
+            for (int j = 0; j < i % 37; j += 1) {
+                text.append(UPPER_STRING.charAt((i * 11 + j * 3) % 26));
+                if (j % 7 == 3) {
+                    text.append(' ');
+                }
+            }
+            text.append(i % 5 == 4 ? "\r\n" : "\n");
+        }
+        return text.toString();
+    }
+
+    /** A file of three messages, the second long and with a blank
+     *  line. */
+    private static final String TEXT =
+        SETTINGS[0] + "\n" + body(3)
+        + SETTINGS[1] + "\n" + body(200) + "\n" + body(20)
+        + SETTINGS[2] + "\n" + body(4);
+
+    /** Return the lines of message K of TEXT converted from the top. */
+    private List<String> expected(int k) {
+        Machine mach = navalMachine();
+        ArrayList<String> result = new ArrayList<>();
+        int m = -1;
+        for (String line : TEXT.split("\n")) {
+            line = line.replace("\r", "");
+            if (line.startsWith("*")) {
+                m += 1;
+                setUpNaval(mach, line);
+            } else if (m == k) {
+                result.add(mach.convert(line));
+            }
+        }
+        return result;
+    }
+
+    /** Return the index of TEXT, with marks every STRIDE characters,
+     *  written to and read back from a file, and check it against SOURCE.
+     */
+    private MessageIndex index(FileChannel source, int stride)
+        throws IOException {
+        Path file = Files.createTempFile("enigma", ".idx");
+        try {
+            MessageIndex.build(source, StandardCharsets.UTF_8, stride)
+                .write(file);
+            MessageIndex index =
+                MessageIndex.read(file, StandardCharsets.UTF_8);
+            index.check(source);
+            return index;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkMessagesAndRanges() throws IOException {
+        Path file = Files.createTempFile("enigma", ".in");
+        Files.write(file, TEXT.getBytes(StandardCharsets.UTF_8));
+        try (FileChannel source = FileChannel.open(file)) {
+            MessageIndex index = index(source, 100);
+            assertEquals(3, index.size());
+            Machine mach = navalMachine();
+            long before = 0;
+            for (int k = 0; k < 3; k += 1) {
+                assertEquals(SETTINGS[k], index.settings(k));
+                assertEquals(before, index.before(k));
+                assertEquals(expected(k),
+                             index.convert(source, k, mach,
+                                           s -> setUpNaval(mach, s)));
+                String whole = String.join("", expected(k));
+                assertEquals(whole.length(), index.length(k));
+                before += whole.length();
+                long len = whole.length();
+                long[][] ranges = { { 0, len }, { 0, 0 }, { len / 3, len / 2 },
+                                    { len - 1, len }, { 101, 303 } };
+                for (long[] r : ranges) {
+                    if (r[1] <= len) {
+                        assertEquals(whole.substring((int) r[0], (int) r[1]),
+                                     index.convert(source, k, r[0], r[1],
+                                                   mach,
+                                                   s -> setUpNaval(mach, s)));
+                    }
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkNoSettings() throws IOException {
+        Path file = Files.createTempFile("enigma", ".in");
+        Files.write(file, "ABC\n* B Beta I II III AAAA\n".getBytes());
+        try (FileChannel source = FileChannel.open(file)) {
+            MessageIndex.build(source, StandardCharsets.UTF_8);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
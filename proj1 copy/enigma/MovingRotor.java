@@ -14,7 +14,10 @@ class MovingRotor extends Rotor {
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _notches = notches;
+        _notched = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i += 1) {
+            _notched[perm.alphabet().toInt(notches.charAt(i))] = true;
+        }
     }
 
     @Override
@@ -23,25 +26,17 @@ class MovingRotor extends Rotor {
     }
 
     @Override
-    boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i++) {
-            if (alphabet().toInt(_notches.charAt(i)) == this.setting()) {
-                return true;
-            }
-        }
-        return false;
+    boolean atNotch(int posn) {
+        return _notched[posn];
     }
 
     @Override
     void advance() {
-        if (this.setting() + 1 > alphabet().size()) {
-            this.set((this.setting() + 1) % alphabet().size());
-        } else {
-            this.set(this.setting() + 1);
-        }
+        int next = setting() + 1;
+        set(next == _notched.length ? 0 : next);
     }
 
-    /** String with notches of Rotor. */
-    private  String _notches;
+    /** Indexed by setting: true at the settings that are notches. */
+    private final boolean[] _notched;
 
 }
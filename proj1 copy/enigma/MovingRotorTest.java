@@ -71,4 +71,17 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkNotches() {
+        setRotor("VI", NAVALA, "ZM");
+        rotor.set(24);
+        assertFalse(rotor.atNotch());
+        rotor.advance();
+        assertTrue(rotor.atNotch());
+        rotor.advance();
+        assertEquals(0, rotor.setting());
+        assertFalse(rotor.atNotch());
+        assertTrue(rotor.atNotch(12));
+    }
+
 }
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -15,26 +17,78 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        String permute = cycles.trim();
-        permute = permute.replace("(", "-");
-        permute = permute.replace(")", "-");
-        _cycles = permute.split("-");
+        _forward = new char[alphabet.size()];
+        _inverse = new char[alphabet.size()];
+        for (int i = 0; i < _forward.length; i += 1) {
+            _forward[i] = (char) i;
+            _inverse[i] = (char) i;
+        }
+        int start = -1;
+        for (int i = 0; i < cycles.length(); i += 1) {
+            char c = cycles.charAt(i);
+            if (c == '(') {
+                start = i + 1;
+            } else if (c == ')') {
+                if (start < 0) {
+                    throw error("unbalanced parentheses in %s", cycles);
+                }
+                addCycle(cycles, start, i);
+                start = -1;
+            }
+        }
     }
 
-    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        int prevlength = _cycles.length;
-        String[] updatedcycle = new String[prevlength + 1];
-        for (int i = 0; i < prevlength; i++) {
-            updatedcycle[i] = _cycles[i];
+    /** Set this Permutation to the one taking each index i of ALPHABET
+     *  to FORWARD[i].  FORWARD must contain each index exactly once. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        if (forward.length != alphabet.size()) {
+            throw error("permutation table has wrong size");
+        }
+        _alphabet = alphabet;
+        _forward = new char[forward.length];
+        _inverse = new char[forward.length];
+        boolean[] hit = new boolean[forward.length];
+        for (int i = 0; i < forward.length; i += 1) {
+            int c = forward[i];
+            if (c < 0 || c >= forward.length || hit[c]) {
+                throw error("not a permutation");
+            }
+            hit[c] = true;
+            _forward[i] = (char) c;
+            _inverse[c] = (char) i;
+        }
+    }
+
+    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where
+     *  CYCLES[START .. END-1] is c0c1...cm. Whitespace in the cycle is
+     *  ignored. */
+    private void addCycle(String cycles, int start, int end) {
+        int first = -1, prev = -1;
+        for (int i = start; i < end; i += 1) {
+            char c = cycles.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            int cur = _alphabet.toInt(c);
+            if (first < 0) {
+                first = cur;
+            } else {
+                _forward[prev] = (char) cur;
+                _inverse[cur] = (char) prev;
+            }
+            prev = cur;
+        }
+        if (first >= 0) {
+            _forward[prev] = (char) first;
+            _inverse[first] = (char) prev;
         }
-        updatedcycle[prevlength + 1] = cycle;
-        _cycles = updatedcycle;
     }
 
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
+        if (p >= 0 && p < _forward.length) {
+            return p;
+        }
         int r = p % size();
         if (r < 0) {
             r += size();
@@ -44,62 +98,30 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        return _alphabet.toInt(permute(_alphabet.toChar(wrap(p))));
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        return _alphabet.toInt(invert(_alphabet.toChar(wrap(c))));
+        return _inverse[wrap(c)];
     }
 
-
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        char result;
-        result = p;
-        for (int i = 0; i < _cycles.length; i += 1) {
-            if (_cycles[i].contains(String.valueOf(p))) {
-                String thecycle = _cycles[i];
-                int index = thecycle.indexOf(String.valueOf(p));
-                if (index != thecycle.length() - 1) {
-                    result = thecycle.charAt(index + 1);
-                } else {
-                    result = thecycle.charAt(0);
-                }
-            }
-        }
-        return result;
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        char result;
-        result = c;
-        if (_cycles == null) {
-            return result;
-        } else {
-            for (int i = 0; i < _cycles.length; i += 1) {
-                if (_cycles[i].contains(String.valueOf(c))) {
-                    String thecycle = _cycles[i];
-                    int index = thecycle.indexOf(String.valueOf(c));
-                    if (index != 0) {
-                        result = thecycle.charAt(index - 1);
-                    } else {
-                        result = thecycle.charAt(thecycle.length() - 1);
-                    }
-                }
-            }
-            return result;
-        }
-
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -110,19 +132,34 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        int numletters = 0;
-        for (int i = 0; i < _cycles.length; i++) {
-            numletters += _cycles[i].length();
-        }
-        if (numletters < _alphabet.size()) {
-            return false;
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (_forward[i] == i) {
+                return false;
+            }
         }
         return true;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Permutation
+            && _alphabet == ((Permutation) obj)._alphabet
+            && Arrays.equals(_forward, ((Permutation) obj)._forward);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_forward);
+    }
+
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** Array of strings with each string representing one cycle mapping. */
-    private String[] _cycles;
+    /** Mapping of each index to its image under this permutation.  An
+     *  alphabet has at most 2**16 distinct characters, so every index
+     *  fits in a char, at half the space of an int. */
+    private final char[] _forward;
+
+    /** Mapping of each index to its image under the inverse permutation. */
+    private final char[] _inverse;
 }
@@ -55,6 +55,49 @@ public class PermutationTest {
         perm = new Permutation("(ALOVDRWFIUQ) (BZKSMHNYC) (EGJTPX)", UPPER);
         assertEquals(true, perm.derangement());
     }
+    @Test
+    public void checkFromTable() {
+        Alphabet alpha = new Alphabet("ABCD");
+        perm = new Permutation(new int[] { 2, 0, 3, 1 }, alpha);
+        assertEquals(new Permutation("(ACDB)", alpha), perm);
+        assertEquals(2, perm.invert(3));
+    }
+
+    @Test
+    public void checkLargeAlphabet() {
+        int size = 60000;
+        char[] chars = new char[size];
+        char c = 0x1000;
+        for (int i = 0; i < size; i += 1, c += 1) {
+            while (Character.isWhitespace(c)) {
+                c += 1;
+            }
+            chars[i] = c;
+        }
+        Alphabet alpha = new Alphabet(new String(chars));
+        StringBuilder cycles = new StringBuilder("(");
+        for (int i = 0; i < size; i += 2) {
+            cycles.append(chars[i]);
+        }
+        cycles.append(") (");
+        for (int i = 1; i < size; i += 2) {
+            cycles.append(chars[i]).append(' ');
+        }
+        cycles.append(")");
+        perm = new Permutation(cycles.toString(), alpha);
+        assertEquals(size, perm.size());
+        assertEquals(2, perm.permute(0));
+        assertEquals(0, perm.permute(size - 2));
+        assertEquals(size - 1, perm.invert(1));
+        assertEquals(chars[3], perm.permute(chars[1]));
+        assertTrue(perm.derangement());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadTable() {
+        new Permutation(new int[] { 2, 0, 2, 1 }, new Alphabet("ABCD"));
+    }
+
     @Test
     public void checkPermuteInt() {
         perm = new Permutation("(AVOLDRWFIUX) (BZKSMNHYC) (EGTJPQ)", UPPER);
@@ -95,5 +138,17 @@ public class PermutationTest {
         perm = new Permutation("(AVOLDRWFIUQ) (BZKSMNHYC) (EGTJPX)", UPPER);
         assertEquals(16, perm.invert(0));
     }
+    @Test
+    public void checkNavalRotors() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name));
+        }
+    }
+    @Test
+    public void checkIdentity() {
+        perm = new Permutation("", UPPER);
+        checkPerm("identity", UPPER_STRING, UPPER_STRING);
+    }
 
 }
@@ -0,0 +1,494 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Applies a machine to a stream of settings lines and messages, as
+ *  StreamingProcessor does, in three threads: a parser, which decodes
+ *  the input and divides it into settings lines and message characters;
+ *  a cipher, which sets up and applies the machine; and a writer, which
+ *  groups the results in fives and encodes and writes them.  The stages
+ *  pass each other blocks of characters through bounded queues, and a
+ *  fixed set of RING blocks circulates from parser to cipher to writer
+ *  and back, so that memory is constant and a slow stage holds up the
+ *  others only when all the blocks are waiting on it.
+ *
+ *  The characters of a block are message characters without blanks,
+ *  with '\n' wherever an output line ends.  A settings line is attached
+ *  to a block at the position where it takes effect.
+ *  @author Lisa Sam Wang
+ */
+class PipelinedProcessor {
+
+    /** A processor that converts messages with MACHINE, and that calls
+     *  SETUP, from the cipher thread, with each settings line (a line
+     *  starting with '*') to configure MACHINE for the following
+     *  messages. */
+    PipelinedProcessor(Machine machine, Consumer<String> setUp) {
+        _machine = machine;
+        _setUp = setUp;
+    }
+
+    /** Read settings lines and messages from IN until end of input and
+     *  write the converted messages to OUT, in groups of five. */
+    void process(ReadableByteChannel in, WritableByteChannel out)
+        throws IOException {
+        ArrayBlockingQueue<Block> free = new ArrayBlockingQueue<>(RING);
+        ArrayBlockingQueue<Block> parsed = new ArrayBlockingQueue<>(RING);
+        ArrayBlockingQueue<Block> ciphered = new ArrayBlockingQueue<>(RING);
+        for (int i = 0; i < RING; i += 1) {
+            free.add(new Block());
+        }
+        _failure = null;
+        Thread writer = new Thread(() -> write(ciphered, free, out));
+        Thread cipher = new Thread(() -> cipher(parsed, ciphered));
+        Thread parser = new Thread(() -> parse(in, free, parsed));
+        _upstream = new Thread[] { parser, cipher };
+        writer.start();
+        cipher.start();
+        parser.start();
+        try {
+            parser.join();
+            cipher.join();
+            writer.join();
+        } catch (InterruptedException excp) {
+            parser.interrupt();
+            cipher.interrupt();
+            writer.interrupt();
+            throw error("interrupted");
+        }
+        if (_failure instanceof IOException) {
+            throw (IOException) _failure;
+        } else if (_failure instanceof RuntimeException) {
+            throw (RuntimeException) _failure;
+        } else if (_failure != null) {
+            throw error("pipeline failed: %s", _failure);
+        }
+    }
+
+    /** Convert IN into OUT as for process, and close OUT.  I/O errors
+     *  are reported as EnigmaExceptions. */
+    void processAll(ReadableByteChannel in, WritableByteChannel out) {
+        try {
+            process(in, out);
+            out.close();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Characters passed between stages, with the settings lines that
+     *  take effect among them. */
+    private static class Block {
+        /** The characters. */
+        private final char[] chars = new char[BLOCK_SIZE];
+        /** Number of characters used. */
+        private int length;
+        /** The settings lines in the block, in order. */
+        private String[] settings = new String[1];
+        /** Position in chars at which each settings line takes
+         *  effect. */
+        private int[] settingsAt = new int[1];
+        /** Number of settings lines. */
+        private int numSettings;
+        /** True iff this is the last block. */
+        private boolean last;
+
+        /** Empty me for reuse. */
+        void clear() {
+            length = 0;
+            Arrays.fill(settings, 0, numSettings, null);
+            numSettings = 0;
+            last = false;
+        }
+
+        /** Add SETTING to take effect at my current end. */
+        void addSettings(String setting) {
+            if (numSettings == settings.length) {
+                settings = Arrays.copyOf(settings, 2 * numSettings);
+                settingsAt = Arrays.copyOf(settingsAt, 2 * numSettings);
+            }
+            settings[numSettings] = setting;
+            settingsAt[numSettings] = length;
+            numSettings += 1;
+        }
+    }
+
+    /* ***** PARSER ***** */
+
+    /** Decode the input from IN into blocks taken from FREE, and pass
+     *  them on to PARSED. */
+    private void parse(ReadableByteChannel in, ArrayBlockingQueue<Block> free,
+                       ArrayBlockingQueue<Block> parsed) {
+        Parser parser = new Parser(free, parsed);
+        try {
+            parser.parse(in);
+        } catch (InterruptedException excp) {
+            return;
+        } catch (IOException | RuntimeException excp) {
+            if (fail(excp, 0) && parser._block != null) {
+                parser._block.last = true;
+                parsed.add(parser._block);
+            }
+        }
+    }
+
+    /** Divides decoded input into blocks. */
+    private static class Parser {
+        /** A parser that fills blocks from FREE and passes them on to
+         *  PARSED. */
+        Parser(ArrayBlockingQueue<Block> free,
+               ArrayBlockingQueue<Block> parsed) {
+            _free = free;
+            _parsed = parsed;
+        }
+
+        /** Parse the input from IN until end of input, passing on the
+         *  last block marked as such. */
+        void parse(ReadableByteChannel in)
+            throws IOException, InterruptedException {
+            CharsetDecoder decoder = Charset.defaultCharset().newDecoder();
+            ByteBuffer bytes = ByteBuffer.allocateDirect(BLOCK_SIZE);
+            CharBuffer chars = CharBuffer.allocate(BLOCK_SIZE);
+            _block = _free.take();
+            boolean eof = false;
+            while (!eof) {
+                eof = in.read(bytes) < 0;
+                bytes.flip();
+                chars.clear();
+                CoderResult cr = decoder.decode(bytes, chars, eof);
+                if (eof && !cr.isError()) {
+                    cr = decoder.flush(chars);
+                }
+                if (cr.isError()) {
+                    cr.throwException();
+                }
+                bytes.compact();
+                chars.flip();
+                while (chars.hasRemaining()) {
+                    accept(chars.get());
+                }
+            }
+            if (_state != LINE_START) {
+                accept('\n');
+            }
+            for (; _trailing > 0; _trailing -= 1) {
+                put('\n');
+            }
+            if (_unset) {
+                throw error("You did not put a setting!");
+            }
+            _block.last = true;
+            _parsed.put(_block);
+            _block = null;
+        }
+
+        /** Process the next input character C. */
+        private void accept(char c) throws InterruptedException {
+            if (c == '\r') {
+                return;
+            }
+            switch (_state) {
+            case LINE_START:
+                if (c == '*') {
+                    startToken();
+                    _state = SETTINGS;
+                    _settings.append(c);
+                } else if (!_configured && !_unset) {
+                    _state = UNSET;
+                    accept(c);
+                } else {
+                    _state = MESSAGE;
+                    _count = 0;
+                    _empty = true;
+                    accept(c);
+                }
+                break;
+            case UNSET:
+                if (c == '\n') {
+                    _unset = true;
+                    _state = LINE_START;
+                }
+                break;
+            case SETTINGS:
+                if (c == '\n') {
+                    _pending = _settings.toString();
+                    _settings.setLength(0);
+                    _configured = true;
+                    _state = LINE_START;
+                } else if (_settings.length() >= MAX_SETTINGS) {
+                    throw error("settings line too long");
+                } else {
+                    _settings.append(c);
+                }
+                break;
+            default:
+                if (c == '\n') {
+                    if (_count > 0 || (_empty && !_unset)) {
+                        put(c);
+                    } else {
+                        _trailing += 1;
+                    }
+                    _state = LINE_START;
+                    break;
+                }
+                _empty = false;
+                if (!Character.isWhitespace(c)) {
+                    startToken();
+                }
+                if (c != ' ') {
+                    put(c);
+                    _count += 1;
+                }
+                break;
+            }
+        }
+
+        /** Note a character other than white space in the input, as
+         *  StreamingProcessor does: the last settings line takes effect
+         *  here, lines of blanks before it give no output, and a message
+         *  before the first settings line is an error. */
+        private void startToken() {
+            if (_unset) {
+                throw error("Invalid setting");
+            }
+            if (_pending != null) {
+                _block.addSettings(_pending);
+                _pending = null;
+            }
+            _trailing = 0;
+        }
+
+        /** Append C to the current block, passing the block on first if
+         *  it is full. */
+        private void put(char c) throws InterruptedException {
+            if (_block.length == BLOCK_SIZE) {
+                _parsed.put(_block);
+                _block = null;
+                _block = _free.take();
+            }
+            _block.chars[_block.length] = c;
+            _block.length += 1;
+        }
+
+        /** Source of empty blocks. */
+        private final ArrayBlockingQueue<Block> _free;
+        /** Destination of filled blocks. */
+        private final ArrayBlockingQueue<Block> _parsed;
+        /** The block being filled, or null if none. */
+        private Block _block;
+        /** The settings line being read. */
+        private final StringBuilder _settings = new StringBuilder();
+        /** One of LINE_START, SETTINGS, MESSAGE, or UNSET. */
+        private int _state = LINE_START;
+        /** True once a settings line has been seen. */
+        private boolean _configured;
+        /** True once a first line that is not a settings line has been
+         *  seen. */
+        private boolean _unset;
+        /** The last settings line, if it has not yet taken effect, or
+         *  null. */
+        private String _pending;
+        /** Number of lines of blanks since the last character other
+         *  than white space. */
+        private long _trailing;
+        /** Number of characters on the current message line. */
+        private long _count;
+        /** True iff the current message line is empty. */
+        private boolean _empty;
+    }
+
+    /* ***** CIPHER ***** */
+
+    /** Convert the characters of the blocks from PARSED in place, set up
+     *  the machine by their settings lines, and pass them on to
+     *  CIPHERED. */
+    private void cipher(ArrayBlockingQueue<Block> parsed,
+                        ArrayBlockingQueue<Block> ciphered) {
+        Block block = null;
+        int done = 0;
+        boolean last;
+        try {
+            do {
+                block = parsed.take();
+                done = 0;
+                for (int j = 0; j <= block.numSettings; j += 1) {
+                    int end = j < block.numSettings ? block.settingsAt[j]
+                        : block.length;
+                    while (done < end) {
+                        int line = done;
+                        while (line < end && block.chars[line] != '\n') {
+                            line += 1;
+                        }
+                        if (line > done) {
+                            _machine.convert(block.chars, done, line - done,
+                                             block.chars, done);
+                        }
+                        done = Math.min(line + 1, end);
+                    }
+                    if (j < block.numSettings) {
+                        _setUp.accept(block.settings[j]);
+                    }
+                }
+                last = block.last;
+                ciphered.put(block);
+                block = null;
+            } while (!last);
+        } catch (InterruptedException excp) {
+            return;
+        } catch (RuntimeException excp) {
+            fail(excp, 1);
+            // The writer waits for a last block even if the parser
+            // failed first.
+            if (block != null) {
+                block.length = done;
+                block.last = true;
+                ciphered.add(block);
+            }
+        }
+    }
+
+    /* ***** WRITER ***** */
+
+    /** Write the characters of the blocks from CIPHERED to OUT in groups
+     *  of five, and return the blocks to FREE. */
+    private void write(ArrayBlockingQueue<Block> ciphered,
+                       ArrayBlockingQueue<Block> free,
+                       WritableByteChannel out) {
+        CharsetEncoder encoder = Charset.defaultCharset().newEncoder();
+        CharBuffer chars = CharBuffer.allocate(2 * BLOCK_SIZE);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(
+            (int) (chars.capacity() * encoder.maxBytesPerChar()));
+        long count = 0;
+        boolean last;
+        try {
+            do {
+                Block block = ciphered.take();
+                for (int i = 0; i < block.length; i += 1) {
+                    char c = block.chars[i];
+                    if (chars.remaining() < 2) {
+                        encode(encoder, chars, bytes, out, false);
+                    }
+                    if (c == '\n') {
+                        count = 0;
+                    } else if (count > 0 && count % GROUP == 0) {
+                        chars.put(' ');
+                    }
+                    chars.put(c);
+                    count += c == '\n' ? 0 : 1;
+                }
+                last = block.last;
+                block.clear();
+                free.put(block);
+            } while (!last);
+            encode(encoder, chars, bytes, out, true);
+        } catch (InterruptedException excp) {
+            return;
+        } catch (IOException | RuntimeException excp) {
+            fail(excp, 2);
+        }
+    }
+
+    /** Encode CHARS with ENCODER into BYTES and write them to OUT,
+     *  finishing the encoding iff END. */
+    private static void encode(CharsetEncoder encoder, CharBuffer chars,
+                               ByteBuffer bytes, WritableByteChannel out,
+                               boolean end) throws IOException {
+        chars.flip();
+        CoderResult cr;
+        do {
+            cr = encoder.encode(chars, bytes, end);
+            if (cr.isError()) {
+                try {
+                    cr.throwException();
+                } catch (CharacterCodingException excp) {
+                    throw error("output not encodable: %s",
+                                excp.getMessage());
+                }
+            }
+            drain(bytes, out);
+        } while (cr.isOverflow());
+        if (end) {
+            while (encoder.flush(bytes).isOverflow()) {
+                drain(bytes, out);
+            }
+            drain(bytes, out);
+        }
+        chars.compact();
+    }
+
+    /** Write all of BYTES to OUT. */
+    private static void drain(ByteBuffer bytes, WritableByteChannel out)
+        throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    /** Record EXCP as the failure of the pipeline, unless one has already
+     *  been recorded, and stop the stages before stage STAGE (0 for the
+     *  parser, 1 for the cipher, 2 for the writer).  Return true iff
+     *  EXCP is the first failure. */
+    private synchronized boolean fail(Exception excp, int stage) {
+        for (int i = 0; i < stage; i += 1) {
+            _upstream[i].interrupt();
+        }
+        if (_failure == null) {
+            _failure = excp;
+            return true;
+        }
+        return false;
+    }
+
+    /** Number of blocks in circulation. */
+    static final int RING = 8;
+
+    /** Number of characters in a block. */
+    static final int BLOCK_SIZE = 1 << 14;
+
+    /** Longest settings line accepted. */
+    static final int MAX_SETTINGS = StreamingProcessor.MAX_SETTINGS;
+
+    /** Number of characters in each output group. */
+    static final int GROUP = 5;
+
+    /** Parser state at the beginning of a line. */
+    private static final int LINE_START = 0;
+
+    /** Parser state within a settings line. */
+    private static final int SETTINGS = 1;
+
+    /** Parser state within a message line. */
+    private static final int MESSAGE = 2;
+
+    /** Parser state within a first line that is not a settings line. */
+    private static final int UNSET = 3;
+
+    /** The machine that converts messages. */
+    private final Machine _machine;
+
+    /** Called with each settings line. */
+    private final Consumer<String> _setUp;
+
+    /** The parser and cipher threads of the current run. */
+    private Thread[] _upstream;
+
+    /** The first failure of any stage, or null. */
+    private Exception _failure;
+}
@@ -0,0 +1,88 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PipelinedProcessor class.
+ *  @author Lisa Sam Wang
+ */
+public class PipelinedProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the output of a pipelined processor on INPUT if PIPELINED,
+     *  and otherwise of a streaming processor. */
+    private String run(String input, boolean pipelined) throws IOException {
+        Machine mach = navalMachine();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayInputStream in = new ByteArrayInputStream(input.getBytes());
+        if (pipelined) {
+            new PipelinedProcessor(mach, s -> setUpNaval(mach, s))
+                .process(Channels.newChannel(in), Channels.newChannel(out));
+        } else {
+            new StreamingProcessor(mach, s -> setUpNaval(mach, s))
+                .process(Channels.newChannel(in), Channels.newChannel(out));
+        }
+        return out.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSameAsStreaming() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 2000; i += 1) {
+            if (i % 40 == 0) {
+                input.append("* B Beta III IV I ")
+                    .append(UPPER_STRING, i % 20, i % 20 + 4).append("\n");
+            }
+            for (int j = 0; j < i % 23; j += 1) {
+                input.append(UPPER_STRING.charAt((i + j * 5) % 26));
+                input.append(j % 4 == 1 ? " " : "");
+            }
+            input.append(i % 7 == 0 ? "  \r\n" : "\n");
+        }
+        input.append("* B Beta I II III AAAA\nFINAL LINE NO NEWLINE");
+        String expected = run(input.toString(), false);
+        assertEquals(expected, run(input.toString(), true));
+        assertEquals("", run("", true));
+    }
+
+    @Test
+    public void checkSameAsText() throws IOException {
+        for (String input : StreamingProcessorTest.INPUTS) {
+            if (!StreamingProcessorTest.text(input).contains("|")) {
+                assertEquals(msg("checkSameAsText", "input %s", input),
+                             StreamingProcessorTest.text(input),
+                             run(input, true));
+            }
+        }
+        assertEquals("VJVVD AHBSZ\n\n",
+                     run("* B Beta III IV I AAAA\nHELLO WORLD\n \n", true));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkNoSettings() throws IOException {
+        run("HELLO\n* B Beta III IV I AAAA\nWORLD\n", true);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadSettings() throws IOException {
+        run("* B Beta III IV I AAAA\nWORLD\n* B Beta V IV I AAAA\nX\n",
+            true);
+    }
+
+}
@@ -0,0 +1,103 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** Log-probabilities of the four-character sequences (quadgrams) of an
+ *  alphabet, estimated from a corpus, used to score candidate decryptions.
+ *  The table is a single flat array indexed by the packed alphabet
+ *  indices of the four characters, so that scoring a window is one load.
+ *  @author Lisa Sam Wang
+ */
+class Quadgrams {
+
+    /** Quadgram statistics over ALPHA counted from the text read from
+     *  CORPUS.  Characters not in ALPHA are skipped, so that quadgrams
+     *  span them; case is folded to upper case where that puts a
+     *  character in ALPHA. */
+    Quadgrams(Alphabet alpha, Reader corpus) throws IOException {
+        _alphabet = alpha;
+        _size = alpha.size();
+        if ((long) _size * _size * _size * _size > MAX_ENTRIES) {
+            throw error("alphabet too large for quadgram scoring");
+        }
+        long[] counts = new long[_size * _size * _size * _size];
+        long total = 0;
+        int mask = _size * _size * _size;
+        int window = 0, seen = 0;
+        char[] buf = new char[BUFFER_SIZE];
+        for (int n = corpus.read(buf); n >= 0; n = corpus.read(buf)) {
+            for (int i = 0; i < n; i += 1) {
+                char c = buf[i];
+                if (!alpha.contains(c)) {
+                    c = Character.toUpperCase(c);
+                    if (!alpha.contains(c)) {
+                        continue;
+                    }
+                }
+                window = (window % mask) * _size + alpha.toInt(c);
+                seen += 1;
+                if (seen >= QUAD) {
+                    counts[window] += 1;
+                    total += 1;
+                }
+            }
+        }
+        if (total == 0) {
+            throw error("corpus has no quadgrams");
+        }
+        _logProb = new float[counts.length];
+        double floor = Math.log10(FLOOR / total);
+        for (int q = 0; q < counts.length; q += 1) {
+            _logProb[q] = (float) (counts[q] == 0 ? floor
+                                   : Math.log10((double) counts[q] / total));
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the log-probability of the quadgram with alphabet indices
+     *  A, B, C, and D. */
+    float score(int a, int b, int c, int d) {
+        return _logProb[((a * _size + b) * _size + c) * _size + d];
+    }
+
+    /** Return the sum of the log-probabilities of the quadgrams starting
+     *  at positions FROM through TO - 1 of TEXT, a sequence of alphabet
+     *  indices, clipped to the quadgrams that lie within TEXT. */
+    double score(int[] text, int from, int to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, text.length - QUAD + 1);
+        double sum = 0;
+        for (int i = from; i < to; i += 1) {
+            sum += score(text[i], text[i + 1], text[i + 2], text[i + 3]);
+        }
+        return sum;
+    }
+
+    /** Number of characters in a quadgram. */
+    static final int QUAD = 4;
+
+    /** Largest table size allowed. */
+    private static final long MAX_ENTRIES = 1 << 26;
+
+    /** Pseudo-count of a quadgram missing from the corpus. */
+    private static final double FLOOR = 0.01;
+
+    /** Size of the buffer in which the corpus is read. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Alphabet of the quadgrams. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Log-probability of each quadgram, by packed indices. */
+    private final float[] _logProb;
+}
@@ -20,7 +20,7 @@ class Reflector extends FixedRotor {
     }
 
     @Override
-    int convertBackward(int e) {
+    int convertBackward(int e, int posn) {
         throw error("Reflector only reflects");
     }
 
@@ -62,20 +62,39 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int converted = _permutation.permute(_permutation.wrap(p + _setting));
-        return _permutation.wrap(converted - _setting);
+        return convertForward(p, _setting);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int converted = _permutation.invert(_permutation.wrap(e + _setting));
-        return _permutation.wrap(converted - _setting);
+        return convertBackward(e, _setting);
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  according to my permutation, were I at setting POSN. */
+    int convertForward(int p, int posn) {
+        int converted = _permutation.permute(_permutation.wrap(p + posn));
+        return _permutation.wrap(converted - posn);
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  according to the inverse of my permutation, were I at setting
+     *  POSN. */
+    int convertBackward(int e, int posn) {
+        int converted = _permutation.invert(_permutation.wrap(e + posn));
+        return _permutation.wrap(converted - posn);
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
+        return atNotch(_setting);
+    }
+
+    /** Returns true iff I would allow the rotor to my left to advance
+     *  were I at setting POSN. */
+    boolean atNotch(int posn) {
         return false;
     }
 
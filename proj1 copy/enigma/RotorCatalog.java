@@ -0,0 +1,225 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** The rotors available to a machine, indexed by name.  Rotors may be
+ *  added already built or with a way to build them.  A catalog read
+ *  from a configuration file only records, for each rotor, the byte
+ *  offsets of its description; a rotor is built from its description the
+ *  first time it is asked for, so that a file with thousands of rotors
+ *  costs one pass over its bytes plus the rotors actually used.
+ *
+ *  In a configuration file, tokens are separated by ASCII whitespace.
+ *  A given number of header tokens are followed by rotor descriptions,
+ *  each a name, a type (M, N, or R, followed for M by the notches), and
+ *  the tokens of its cycles, which are those containing '('.  Where two
+ *  rotors have the same name, the later one is used.
+ *  @author Lisa Sam Wang
+ */
+class RotorCatalog {
+
+    /** Builds a rotor from its description. */
+    interface Factory {
+        /** Return the rotor named NAME of type TYPE whose permutation is
+         *  given by CYCLES. */
+        Rotor make(String name, String type, String cycles);
+    }
+
+    /** An empty catalog. */
+    RotorCatalog() {
+        _text = null;
+        _length = 0;
+        _charset = null;
+        _header = new ArrayList<>();
+    }
+
+    /** A catalog of the already built rotors ROTORS. */
+    RotorCatalog(Collection<Rotor> rotors) {
+        this();
+        for (Rotor rotor : rotors) {
+            add(rotor.name(), () -> rotor);
+        }
+    }
+
+    /** A catalog of the rotors described in the remaining bytes of TEXT,
+     *  which are encoded in CHARSET, following their first HEADER tokens.
+     *  Rotors are built by FACTORY when first needed.  TEXT is read in
+     *  place, and must not change while I am in use. */
+    RotorCatalog(ByteBuffer text, int header, Charset charset,
+                 Factory factory) {
+        _text = text.slice();
+        _length = _text.limit();
+        _charset = charset;
+        _header = new ArrayList<>();
+        int pos = skipSpace(0);
+        for (; _header.size() < header && pos < _length;
+             pos = skipSpace(pos)) {
+            int end = tokenEnd(pos);
+            _header.add(decode(pos, end));
+            pos = end;
+        }
+        while (pos < _length) {
+            int end = tokenEnd(pos);
+            String name = decode(pos, end);
+            pos = skipSpace(end);
+            if (pos == _length) {
+                break;
+            }
+            end = tokenEnd(pos);
+            String type = decode(pos, end);
+            if ("MNR".indexOf(type.charAt(0)) < 0) {
+                throw error("Invalid rotor type!");
+            }
+            pos = skipSpace(end);
+            if (pos == _length) {
+                throw error("bad rotor description");
+            }
+            int start = pos;
+            end = start;
+            while (pos < _length && isCycle(pos)) {
+                end = tokenEnd(pos);
+                pos = skipSpace(end);
+            }
+            int last = end;
+            add(name, () -> factory.make(name, type, decode(start, last)));
+        }
+    }
+
+    /** Add a rotor named NAME that is built by calling SOURCE when first
+     *  needed, replacing any rotor of the same name. */
+    void add(String name, Supplier<Rotor> source) {
+        Entry entry = new Entry(name, source);
+        _entries.put(name, entry);
+        _order.add(entry);
+    }
+
+    /** Return the tokens preceding the rotor descriptions. */
+    List<String> header() {
+        return _header;
+    }
+
+    /** Return the number of rotors I hold. */
+    int size() {
+        return _entries.size();
+    }
+
+    /** Return true iff I have a rotor named NAME. */
+    boolean contains(String name) {
+        return _entries.containsKey(name);
+    }
+
+    /** Return the rotor named NAME, building it if necessary, or null if
+     *  I have none. */
+    Rotor get(String name) {
+        Entry entry = _entries.get(name);
+        return entry == null ? null : build(entry);
+    }
+
+    /** Return all my rotors, in order of description, building those not
+     *  yet built. */
+    Collection<Rotor> all() {
+        ArrayList<Rotor> result = new ArrayList<>();
+        for (Entry entry : _order) {
+            if (_entries.get(entry.name) == entry) {
+                result.add(build(entry));
+            }
+        }
+        return result;
+    }
+
+    /** One rotor, built or not. */
+    private static class Entry {
+        /** The rotor named NAME, built by SOURCE. */
+        Entry(String name, Supplier<Rotor> source) {
+            this.name = name;
+            this.source = source;
+        }
+
+        /** Name of the rotor. */
+        private final String name;
+        /** Builds the rotor. */
+        private final Supplier<Rotor> source;
+        /** The rotor, once built. */
+        private Rotor built;
+    }
+
+    /** Return the rotor of ENTRY, building it if necessary. */
+    private synchronized Rotor build(Entry entry) {
+        if (entry.built == null) {
+            entry.built = entry.source.get();
+        }
+        return entry.built;
+    }
+
+    /** Return the position of the first non-whitespace byte of the text
+     *  at or after POS, or the text's length if none. */
+    private int skipSpace(int pos) {
+        while (pos < _length && isSpace(_text.get(pos))) {
+            pos += 1;
+        }
+        return pos;
+    }
+
+    /** Return the position just after the token starting at POS. */
+    private int tokenEnd(int pos) {
+        while (pos < _length && !isSpace(_text.get(pos))) {
+            pos += 1;
+        }
+        return pos;
+    }
+
+    /** Return true iff the token starting at POS contains '('. */
+    private boolean isCycle(int pos) {
+        for (; pos < _length && !isSpace(_text.get(pos)); pos += 1) {
+            if (_text.get(pos) == '(') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff B is an ASCII whitespace byte. */
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r'
+            || b == '\f' || b == VERTICAL_TAB;
+    }
+
+    /** Return bytes START .. END-1 of the text, decoded. */
+    private String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        _text.get(start, bytes);
+        return new String(bytes, _charset);
+    }
+
+    /** The ASCII vertical tab. */
+    private static final byte VERTICAL_TAB = 0x0b;
+
+    /** The configuration text, or null if not read from one.  It is
+     *  only read with absolute indices, so that rotors may be built from
+     *  it by several threads at once. */
+    private final ByteBuffer _text;
+
+    /** Number of bytes in _text. */
+    private final int _length;
+
+    /** Encoding of _text. */
+    private final Charset _charset;
+
+    /** The header tokens of _text. */
+    private final ArrayList<String> _header;
+
+    /** Each rotor's description, by name. */
+    private final HashMap<String, Entry> _entries = new HashMap<>();
+
+    /** All descriptions, in order. */
+    private final ArrayList<Entry> _order = new ArrayList<>();
+}
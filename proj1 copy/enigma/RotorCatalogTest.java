@@ -0,0 +1,85 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RotorCatalog class.
+ *  @author Lisa Sam Wang
+ */
+public class RotorCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration with three rotors, one of them described twice. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ 5 3\n"
+        + " B R (AE) (BN)\n\t(CK)\n"
+        + " I MQ (AELTPHQXRU) (BKNW)\n"
+        + " II ME\n"
+        + " I MV (AB)";
+
+    /** Names of the rotors built so far by factory(). */
+    private ArrayList<String> _built = new ArrayList<>();
+
+    /** Return a catalog of TEXT whose factory records the rotors it
+     *  builds in _built. */
+    private RotorCatalog catalog(String text) {
+        return new RotorCatalog(
+            ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), 3,
+                                StandardCharsets.UTF_8,
+            (name, type, cycles) -> {
+                _built.add(name + " " + type + " " + cycles);
+                Permutation perm = new Permutation(cycles, UPPER);
+                if (type.charAt(0) == 'M') {
+                    return new MovingRotor(name, perm, type.substring(1));
+                }
+                return new Reflector(name, perm);
+            });
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkLazy() {
+        RotorCatalog cat = catalog(CONFIG);
+        assertEquals("[ABCDEFGHIJKLMNOPQRSTUVWXYZ, 5, 3]",
+                     cat.header().toString());
+        assertEquals(3, cat.size());
+        assertTrue(cat.contains("II"));
+        assertFalse(cat.contains("III"));
+        assertTrue(_built.isEmpty());
+        Rotor b = cat.get("B");
+        assertEquals("[B R (AE) (BN)\n\t(CK)]", _built.toString());
+        assertSame(b, cat.get("B"));
+        assertEquals(1, _built.size());
+        assertNull(cat.get("III"));
+    }
+
+    @Test
+    public void checkDescriptions() {
+        RotorCatalog cat = catalog(CONFIG);
+        assertTrue(cat.get("I").atNotch(UPPER.toInt('V')));
+        assertEquals(UPPER.toInt('B'), cat.get("I").convertForward(0));
+        assertEquals(0, cat.get("II").convertForward(0));
+        assertEquals(3, cat.all().size());
+        assertEquals(3, _built.size());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadType() {
+        catalog("AB 2 1 X Q (AB)");
+    }
+
+}
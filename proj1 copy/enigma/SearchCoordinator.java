@@ -0,0 +1,460 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Scanner;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Runs a KeySearch in several worker processes on one machine.  The
+ *  keys to try are numbered as by KeySearch and divided into units of
+ *  consecutive keys, which are handed out, one at a time, to each worker
+ *  over a pipe to its standard input; the worker replies on its standard
+ *  output with the keys it finds and then the end of the unit.  Each
+ *  worker is a JVM running Main with --worker, which searches each unit
+ *  with its own KeySearch.
+ *
+ *  When a worker fails, the unit it was searching is handed out again,
+ *  and a replacement worker is started.
+ *
+ *  If given a checkpoint file, the coordinator records the set of
+ *  completed units there as a bitmap, rewriting it periodically, and the
+ *  keys found so far in a companion file whose name has ".keys" added,
+ *  so that an interrupted search may be resumed by running it again.
+ *  The checkpoint begins with a digest of the configuration and the job,
+ *  so that it is never resumed by a different search.
+ *
+ *  The protocol consists of lines.  The coordinator first sends
+ *    JOB offset crib ciphertext
+ *  and then for each unit
+ *    UNIT lo hi
+ *  to which the worker responds with a line
+ *    KEY index settings-line
+ *  for each key found among keys lo .. hi-1, and then
+ *    DONE lo hi
+ *  The worker exits at the end of its input.
+ *  @author Lisa Sam Wang
+ */
+class SearchCoordinator {
+
+    /** A coordinator that starts WORKERS workers, each by running the
+     *  command COMMAND, which is followed by the name of a configuration
+     *  file. */
+    SearchCoordinator(List<String> command, int workers) {
+        if (workers < 1) {
+            throw error("need at least one worker");
+        }
+        _command = new ArrayList<>(command);
+        _workers = workers;
+    }
+
+    /** Return the command that runs a worker with this JVM and
+     *  classpath. */
+    static List<String> javaCommand() {
+        ArrayList<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator
+                    + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        command.add("--worker");
+        return command;
+    }
+
+    /** Answer the requests of a coordinator on INPUT with SEARCH, sending
+     *  the replies to OUTPUT, as a worker does. */
+    static void answer(KeySearch search, Scanner input, PrintStream output) {
+        while (input.hasNextLine()) {
+            String line = input.nextLine();
+            String[] request = line.split(" ");
+            try {
+                if (request[0].equals("JOB") && request.length == 4) {
+                    search.setCrib(request[3], request[2],
+                                   Integer.parseInt(request[1]));
+                } else if (request[0].equals("UNIT")
+                           && request.length == 3) {
+                    long lo = Long.parseLong(request[1]),
+                        hi = Long.parseLong(request[2]);
+                    for (KeySearch.Candidate key : search.search(lo, hi)) {
+                        output.printf("KEY %d %s%n", key.index(), key);
+                    }
+                    output.printf("DONE %d %d%n", lo, hi);
+                    output.flush();
+                } else {
+                    throw error("bad request: %s", line);
+                }
+            } catch (NumberFormatException excp) {
+                throw error("bad request: %s", line);
+            }
+        }
+    }
+
+    /** Record progress in CHECKPOINT (and its companion), resuming from
+     *  them if they exist, and rewrite CHECKPOINT at most every INTERVAL
+     *  milliseconds. */
+    void setCheckpoint(File checkpoint, long interval) {
+        _checkpoint = checkpoint;
+        _interval = interval;
+    }
+
+    /** Divide the keys into units of SIZE keys. */
+    void setUnitSize(long size) {
+        _unitSize = size;
+    }
+
+    /** Report progress by calling PROGRESS with a message after each unit
+     *  completes. */
+    void setProgress(Consumer<String> progress) {
+        _progress = progress;
+    }
+
+    /** Return the settings lines of the keys among the NUMKEYS keys of
+     *  the machine configured by file CONFIG under which CIPHERTEXT
+     *  decrypts to CRIB at position OFFSET, in order of key number. */
+    List<String> run(String config, long numKeys, String ciphertext,
+                     String crib, int offset) {
+        _job = String.format("JOB %d %s %s", offset, crib.replace(" ", ""),
+                             ciphertext.replace(" ", ""));
+        _units = (numKeys + _unitSize - 1) / _unitSize;
+        if (_units > Integer.MAX_VALUE) {
+            throw error("too many work units");
+        }
+        _numKeys = numKeys;
+        _done = new BitSet((int) _units);
+        _keys = new TreeMap<>();
+        _error = null;
+        if (_checkpoint != null) {
+            _digest = digest(config, _job);
+            resume();
+        }
+        _pending = new LinkedBlockingQueue<>();
+        for (int u = _done.nextClearBit(0); u < _units;
+             u = _done.nextClearBit(u + 1)) {
+            _pending.add(u);
+        }
+        _lastCheckpoint = System.currentTimeMillis();
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < _workers && !_pending.isEmpty(); w += 1) {
+            Thread thread = new Thread(() -> serve(config));
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException excp) {
+                throw error("interrupted");
+            }
+        }
+        if (_error != null) {
+            throw _error;
+        }
+        if (_done.cardinality() < _units) {
+            throw error("workers failed with %d units unsearched",
+                        _units - _done.cardinality());
+        }
+        if (_checkpoint != null) {
+            writeCheckpoint();
+        }
+        return new ArrayList<>(_keys.values());
+    }
+
+    /** Keep a worker on CONFIG busy with pending units until all units
+     *  are complete, starting a replacement whenever it fails.  Give up
+     *  after MAX_FAILURES workers in a row fail without completing a
+     *  unit, leaving the pending units to the other threads. */
+    private void serve(String config) {
+        int failures = 0;
+        while (!finished() && failures < MAX_FAILURES) {
+            if (work(config)) {
+                failures = 0;
+            } else {
+                failures += 1;
+            }
+        }
+    }
+
+    /** Start a worker on CONFIG and give it pending units until all units
+     *  are complete or it fails.  A unit in progress when the worker fails
+     *  is returned to the pending units.  Return true iff the worker
+     *  completed a unit. */
+    private boolean work(String config) {
+        ArrayList<String> command = new ArrayList<>(_command);
+        command.add(config);
+        Process proc;
+        try {
+            proc = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        } catch (IOException excp) {
+            return false;
+        }
+        PrintWriter toWorker = new PrintWriter(proc.getOutputStream());
+        BufferedReader fromWorker =
+            new BufferedReader(new InputStreamReader(proc.getInputStream()));
+        toWorker.println(_job);
+        boolean completed = false;
+        Integer unit = null;
+        try {
+            while (!finished()) {
+                unit = _pending.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (unit == null) {
+                    continue;
+                }
+                long lo = unit * _unitSize;
+                long hi = Math.min(lo + _unitSize, _numKeys);
+                toWorker.printf("UNIT %d %d%n", lo, hi);
+                toWorker.flush();
+                TreeMap<Long, String> found = new TreeMap<>();
+                String done = String.format("DONE %d %d", lo, hi);
+                String line = fromWorker.readLine();
+                for (; line != null && !line.equals(done);
+                     line = fromWorker.readLine()) {
+                    String[] reply = line.split(" ", 3);
+                    if (reply.length < 3 || !reply[0].equals("KEY")) {
+                        throw new IOException("bad reply: " + line);
+                    }
+                    found.put(Long.parseLong(reply[1]), reply[2]);
+                }
+                if (line == null) {
+                    throw new IOException("worker exited");
+                }
+                complete(unit, found);
+                unit = null;
+                completed = true;
+            }
+        } catch (IOException | NumberFormatException
+                 | InterruptedException excp) {
+            proc.destroy();
+            return completed;
+        } catch (EnigmaException excp) {
+            fail(excp);
+            proc.destroy();
+            return completed;
+        } finally {
+            if (unit != null) {
+                _pending.add(unit);
+            }
+        }
+        toWorker.close();
+        try {
+            proc.waitFor();
+        } catch (InterruptedException excp) {
+            proc.destroy();
+        }
+        return completed;
+    }
+
+    /** Return true iff all units are complete or the search has failed
+     *  for a reason other than a worker's failure. */
+    private synchronized boolean finished() {
+        return _error != null || _done.cardinality() == _units;
+    }
+
+    /** Stop the search because of EXCP, unless it has already stopped. */
+    private synchronized void fail(EnigmaException excp) {
+        if (_error == null) {
+            _error = excp;
+        }
+    }
+
+    /** Record that UNIT is complete, with keys FOUND (by number). */
+    private synchronized void complete(int unit, TreeMap<Long, String> found) {
+        if (_checkpoint != null && !found.isEmpty()) {
+            try (PrintWriter keys =
+                 new PrintWriter(new FileWriter(keysFile(), true))) {
+                for (Long index : found.keySet()) {
+                    keys.printf("%d %s%n", index, found.get(index));
+                }
+            } catch (IOException excp) {
+                throw error("could not write %s", keysFile());
+            }
+        }
+        _keys.putAll(found);
+        _done.set(unit);
+        if (_checkpoint != null
+            && System.currentTimeMillis() - _lastCheckpoint >= _interval) {
+            writeCheckpoint();
+        }
+        if (_progress != null) {
+            _progress.accept(String.format("%d of %d units done, %d found",
+                                           _done.cardinality(), _units,
+                                           _keys.size()));
+        }
+    }
+
+    /** Read the completed units and found keys of an earlier run of the
+     *  same search from the checkpoint files, if present. */
+    private void resume() {
+        if (_checkpoint.exists()) {
+            try (DataInputStream in =
+                 new DataInputStream(new FileInputStream(_checkpoint))) {
+                byte[] digest = new byte[_digest.length];
+                if (in.readInt() != MAGIC) {
+                    throw error("%s is not a checkpoint", _checkpoint);
+                }
+                in.readFully(digest);
+                if (!Arrays.equals(digest, _digest)
+                    || in.readLong() != _numKeys
+                    || in.readLong() != _unitSize) {
+                    throw error("checkpoint %s is for a different search",
+                                _checkpoint);
+                }
+                byte[] bits = new byte[(int) ((_units + Byte.SIZE - 1)
+                                              / Byte.SIZE)];
+                in.readFully(bits);
+                _done = BitSet.valueOf(bits);
+            } catch (IOException excp) {
+                throw error("could not read %s", _checkpoint);
+            }
+        }
+        if (keysFile().exists()) {
+            try (BufferedReader in =
+                 new BufferedReader(new FileReader(keysFile()))) {
+                for (String line = in.readLine(); line != null;
+                     line = in.readLine()) {
+                    String[] entry = line.split(" ", 2);
+                    _keys.put(Long.parseLong(entry[0]), entry[1]);
+                }
+            } catch (IOException | RuntimeException excp) {
+                throw error("could not read %s", keysFile());
+            }
+        }
+    }
+
+    /** Write the set of completed units to the checkpoint file, replacing
+     *  it atomically. */
+    private synchronized void writeCheckpoint() {
+        File temp = new File(_checkpoint.getPath() + ".tmp");
+        try (DataOutputStream out =
+             new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeInt(MAGIC);
+            out.write(_digest);
+            out.writeLong(_numKeys);
+            out.writeLong(_unitSize);
+            byte[] bits = new byte[(int) ((_units + Byte.SIZE - 1)
+                                          / Byte.SIZE)];
+            byte[] set = _done.toByteArray();
+            System.arraycopy(set, 0, bits, 0, set.length);
+            out.write(bits);
+        } catch (IOException excp) {
+            throw error("could not write %s", temp);
+        }
+        try {
+            Files.move(temp.toPath(), _checkpoint.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write %s", _checkpoint);
+        }
+        _lastCheckpoint = System.currentTimeMillis();
+    }
+
+    /** Return a digest identifying the search by the contents of the
+     *  configuration file CONFIG and the JOB line. */
+    private static byte[] digest(String config, String job) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST);
+            digest.update(Files.readAllBytes(Paths.get(config)));
+            digest.update(job.getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (IOException excp) {
+            throw error("could not read %s", config);
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("no %s digest", DIGEST);
+        }
+    }
+
+    /** Return the file of keys found so far. */
+    private File keysFile() {
+        return new File(_checkpoint.getPath() + ".keys");
+    }
+
+    /** Identifies a checkpoint file. */
+    private static final int MAGIC = 0x454b5343;
+
+    /** Algorithm of the digest identifying a search. */
+    private static final String DIGEST = "SHA-256";
+
+    /** Largest number of workers in a row that one thread starts that
+     *  fail without completing a unit. */
+    static final int MAX_FAILURES = 3;
+
+    /** Milliseconds an idle thread waits for a unit to be returned
+     *  before checking whether the search is finished. */
+    private static final long POLL_INTERVAL = 100;
+
+    /** Default number of keys in a unit. */
+    static final long DEFAULT_UNIT_SIZE = 1L << 22;
+
+    /** Command that starts a worker, less the configuration file. */
+    private final List<String> _command;
+
+    /** Number of workers. */
+    private final int _workers;
+
+    /** Number of keys in a unit. */
+    private long _unitSize = DEFAULT_UNIT_SIZE;
+
+    /** Checkpoint file, or null. */
+    private File _checkpoint;
+
+    /** Milliseconds between checkpoints. */
+    private long _interval;
+
+    /** Receives progress reports, or null. */
+    private Consumer<String> _progress;
+
+    /** The JOB line of the current search. */
+    private String _job;
+
+    /** Number of keys in the current search. */
+    private long _numKeys;
+
+    /** Number of units in the current search. */
+    private long _units;
+
+    /** The completed units. */
+    private BitSet _done;
+
+    /** Units not yet completed or in progress. */
+    private LinkedBlockingQueue<Integer> _pending;
+
+    /** Digest of the configuration and job of the current search, if
+     *  checkpointing. */
+    private byte[] _digest;
+
+    /** The error that stopped the current search, or null. */
+    private EnigmaException _error;
+
+    /** Settings lines of the keys found, by number. */
+    private TreeMap<Long, String> _keys;
+
+    /** Value of System.currentTimeMillis() at the last checkpoint. */
+    private long _lastCheckpoint;
+}
@@ -0,0 +1,113 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The suite of all JUnit tests for the SearchCoordinator class.
+ *  @author Lisa Sam Wang
+ */
+public class SearchCoordinatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Configuration of a 4-slot, 2-pawl machine with six rotor orders. */
+    private static final String CONFIG =
+        "ABCDEF 4 2\n"
+        + " R R (AB)(CD)(EF)\n"
+        + " F N (ACE)(BDF)\n"
+        + " P MA (ABC)\n"
+        + " Q MC (AF)(BD)\n"
+        + " S MF (ACEBDF)\n";
+
+    /** The plaintext of the message searched. */
+    private static final String PLAIN = "ABCDEFFEDCBAACEBDFFDBECA";
+
+    /** Return PLAIN encrypted by the machine of CONFIG with rotors
+     *  R F S P at CAE. */
+    private String cipher() {
+        Alphabet alpha = new Alphabet("ABCDEF");
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("R", new Permutation("(AB)(CD)(EF)", alpha)));
+        all.add(new FixedRotor("F", new Permutation("(ACE)(BDF)", alpha)));
+        all.add(new MovingRotor("P", new Permutation("(ABC)", alpha), "A"));
+        all.add(new MovingRotor("S", new Permutation("(ACEBDF)", alpha),
+                                "F"));
+        Machine mach = new Machine(alpha, 4, 2, all);
+        mach.insertRotors(new String[] { "R", "F", "S", "P" });
+        mach.setRotors("CAE");
+        return mach.convert(PLAIN);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkResume() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        File config = new File(dir, "small.conf");
+        Files.write(config.toPath(), CONFIG.getBytes());
+        File checkpoint = new File(dir, "search.ckpt");
+        String plain = PLAIN;
+        String cipher = cipher();
+
+        SearchCoordinator coordinator =
+            new SearchCoordinator(SearchCoordinator.javaCommand(), 2);
+        coordinator.setUnitSize(100);
+        coordinator.setCheckpoint(checkpoint, 0);
+        List<String> keys =
+            coordinator.run(config.getPath(), 6 * 6 * 6 * 6, cipher,
+                            plain.substring(4, 20), 4);
+        assertTrue(keys.contains("* R F S P CAE"));
+        assertTrue(checkpoint.exists());
+
+        SearchCoordinator resumed =
+            new SearchCoordinator(new ArrayList<String>(), 1);
+        resumed.setUnitSize(100);
+        resumed.setCheckpoint(checkpoint, 0);
+        assertEquals(keys, resumed.run(config.getPath(), 6 * 6 * 6 * 6,
+                                       cipher, plain.substring(4, 20), 4));
+
+        Files.write(config.toPath(),
+                    CONFIG.replace("(ABC)", "(ACB)").getBytes());
+        try {
+            resumed.run(config.getPath(), 6 * 6 * 6 * 6, cipher,
+                        plain.substring(4, 20), 4);
+            fail("resumed a checkpoint of a different configuration");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("different search"));
+        }
+    }
+
+    @Test
+    public void checkRestart() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        File config = new File(dir, "small.conf");
+        Files.write(config.toPath(), CONFIG.getBytes());
+        File marker = new File(dir, "failed");
+        ArrayList<String> command = new ArrayList<>();
+        command.add("sh");
+        command.add("-c");
+        command.add("if [ -e '" + marker + "' ]; then exec \"$0\" \"$@\"; "
+                    + "fi; touch '" + marker + "'; exit 1");
+        command.addAll(SearchCoordinator.javaCommand());
+        SearchCoordinator coordinator = new SearchCoordinator(command, 1);
+        coordinator.setUnitSize(100);
+        List<String> keys =
+            coordinator.run(config.getPath(), 6 * 6 * 6 * 6, cipher(),
+                            PLAIN.substring(4, 20), 4);
+        assertTrue(marker.exists());
+        assertTrue(keys.contains("* R F S P CAE"));
+    }
+
+}
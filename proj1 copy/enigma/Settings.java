@@ -0,0 +1,100 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Sets up machines by settings lines, in the format specified in the
+ *  assignment.  The state set up by each recent settings line is
+ *  remembered, so that a settings line that repeats one (ignoring
+ *  trailing blanks) only restores it.  May be used from several threads
+ *  at once, each with its own machine.
+ *  @author Lisa Sam Wang
+ */
+class Settings {
+
+    /** Set M according to the specification given on SETTINGS,
+     *  which must have the format specified in the assignment.  The
+     *  resulting state of M is remembered, so that a settings line that
+     *  repeats a recent one (ignoring trailing blanks) only restores
+     *  it. */
+    void setUp(Machine M, String settings) {
+        int end = settings.length();
+        while (end > 0 && settings.charAt(end - 1) == ' ') {
+            end -= 1;
+        }
+        String key = settings.substring(0, end);
+        MachineState known;
+        synchronized (_setups) {
+            known = _setups.get(key);
+        }
+        if (known != null) {
+            M.restore(known);
+            return;
+        }
+        parseSetUp(M, settings);
+        known = M.state().copy();
+        known.prepare();
+        synchronized (_setups) {
+            _setups.put(key, known);
+        }
+    }
+
+    /** Set M according to the specification given on SETTINGS, as for
+     *  setUp, without consulting the remembered settings. */
+    private static void parseSetUp(Machine M, String settings) {
+        String[] S = settings.split(" ");
+        if (S.length - 1 < M.numRotors()) {
+            throw new EnigmaException("Wrong number of arguments in settings");
+        }
+        String[] R = new String[M.numRotors()];
+        for (int i = 1; i < M.numRotors() + 1; i++) {
+            R[i - 1] = S[i];
+        }
+        if (new HashSet<>(Arrays.asList(R)).size() != R.length) {
+            throw new EnigmaException("You already used this rotor");
+        }
+        M.insertRotors(R);
+        if (!M.myRotors()[0].reflecting()) {
+            throw new EnigmaException("First rotor has to be a reflector");
+        }
+        if (S.length > M.numRotors() + 2
+                && !S[M.numRotors() + 2].startsWith("(")) {
+            M.setRotors(S[M.numRotors() + 1] + " " + S[M.numRotors() + 2]);
+        }
+        M.setRotors(S[M.numRotors() + 1]);
+        if ((S.length > M.numRotors() + 2
+                && S[M.numRotors() + 2].startsWith("("))
+                || (S.length > M.numRotors() + 3
+                && S[M.numRotors() + 2].startsWith("("))) {
+            StringBuilder steckered = new StringBuilder();
+            for (int i = M.numRotors() + 2; i < S.length; i++) {
+                steckered.append(S[i]);
+            }
+            if (steckered.length() > 0) {
+                M.setPlugboard(new Permutation(steckered.toString(),
+                                               M.alphabet()));
+            }
+        } else {
+            M.setPlugboard(new Permutation("", M.alphabet()));
+        }
+    }
+
+    /** Number of settings lines whose states are remembered. */
+    static final int SETUPS_REMEMBERED = 256;
+
+    /** Load factor of the table of remembered settings. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** The states set up by recent settings lines, less trailing
+     *  blanks, least recently used first. */
+    private final LinkedHashMap<String, MachineState> _setups =
+        new LinkedHashMap<>(SETUPS_REMEMBERED, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, MachineState> eldest) {
+                return size() > SETUPS_REMEMBERED;
+            }
+        };
+}
@@ -0,0 +1,312 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Applies a machine to a stream of settings lines and messages in
+ *  constant memory.  Input is decoded a block at a time from a channel,
+ *  and converted characters are grouped in fives directly in a reusable
+ *  output buffer that is written to a channel whenever it fills.  Message
+ *  lines are never held in memory as a whole, so the input may be
+ *  arbitrarily large.
+ *  @author Lisa Sam Wang
+ */
+class StreamingProcessor {
+
+    /** A processor that converts messages with MACHINE, and that calls
+     *  SETUP with each settings line (a line starting with '*') to
+     *  configure MACHINE for the following messages. */
+    StreamingProcessor(Machine machine, Consumer<String> setUp) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _setUp = setUp;
+        Charset charset = Charset.defaultCharset();
+        _decoder = charset.newDecoder();
+        _encoder = charset.newEncoder();
+        _inBytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        _inChars = CharBuffer.allocate(BUFFER_SIZE);
+        _outChars = CharBuffer.allocate(BUFFER_SIZE);
+        _outBytes = ByteBuffer.allocateDirect(
+            (int) (BUFFER_SIZE * _encoder.maxBytesPerChar()));
+    }
+
+    /** Read settings lines and messages from IN until end of input and
+     *  write the converted messages to OUT, in groups of five. */
+    void process(ReadableByteChannel in, WritableByteChannel out)
+        throws IOException {
+        _out = out;
+        _state = LINE_START;
+        _configured = false;
+        _unset = false;
+        _pending = null;
+        _trailing = 0;
+        _settings.setLength(0);
+        _inBytes.clear();
+        _outChars.clear();
+        _decoder.reset();
+        _encoder.reset();
+        boolean eof = false;
+        while (!eof) {
+            eof = in.read(_inBytes) < 0;
+            _inBytes.flip();
+            _inChars.clear();
+            CoderResult cr = _decoder.decode(_inBytes, _inChars, eof);
+            if (eof && !cr.isError()) {
+                cr = _decoder.flush(_inChars);
+            }
+            if (cr.isError()) {
+                cr.throwException();
+            }
+            _inBytes.compact();
+            _inChars.flip();
+            while (_inChars.hasRemaining()) {
+                accept(_inChars.get());
+            }
+        }
+        endLine();
+        for (; _trailing > 0; _trailing -= 1) {
+            put('\n');
+        }
+        flush(true);
+        if (_unset) {
+            throw error("You did not put a setting!");
+        }
+    }
+
+    /** Convert IN into OUT as for process, and close OUT.  I/O errors
+     *  are reported as EnigmaExceptions. */
+    void processAll(ReadableByteChannel in, WritableByteChannel out) {
+        try {
+            process(in, out);
+            out.close();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Process the next input character C. */
+    private void accept(char c) {
+        if (c == '\r') {
+            return;
+        }
+        switch (_state) {
+        case LINE_START:
+            if (c == '*') {
+                startToken();
+                _state = SETTINGS;
+                _settings.append(c);
+            } else if (!_configured && !_unset) {
+                _state = UNSET;
+                accept(c);
+            } else {
+                _state = MESSAGE;
+                _count = 0;
+                _empty = true;
+                accept(c);
+            }
+            break;
+        case UNSET:
+            if (c == '\n') {
+                endLine();
+            }
+            break;
+        case SETTINGS:
+            if (c == '\n') {
+                endLine();
+            } else if (_settings.length() >= MAX_SETTINGS) {
+                throw error("settings line too long");
+            } else {
+                _settings.append(c);
+            }
+            break;
+        default:
+            if (c == '\n') {
+                endLine();
+                break;
+            }
+            _empty = false;
+            if (!Character.isWhitespace(c)) {
+                startToken();
+            }
+            if (c != ' ') {
+                if (_count > 0 && _count % GROUP == 0) {
+                    put(' ');
+                }
+                put(_alphabet.toChar(_machine.convert(_alphabet.toInt(c))));
+                _count += 1;
+            }
+            break;
+        }
+    }
+
+    /** Note a character other than white space in the input.  As in
+     *  TextProcessor, a settings line takes effect only if something
+     *  other than white space follows it, and a message before the first
+     *  settings line is an error. */
+    private void startToken() {
+        if (_unset) {
+            throw error("Invalid setting");
+        }
+        if (_pending != null) {
+            _setUp.accept(_pending);
+            _pending = null;
+        }
+        _trailing = 0;
+    }
+
+    /** Finish the current input line, if any.  An empty message line
+     *  gives an empty output line at once.  A line of blanks, or any
+     *  line after an unset first line, gives one only if nothing other
+     *  than white space follows it, as in TextProcessor, so it is
+     *  counted in _trailing until then. */
+    private void endLine() {
+        if (_state == SETTINGS) {
+            _pending = _settings.toString();
+            _settings.setLength(0);
+            _configured = true;
+        } else if (_state == UNSET) {
+            _unset = true;
+        } else if (_state == MESSAGE) {
+            if (_count > 0 || (_empty && !_unset)) {
+                put('\n');
+            } else {
+                _trailing += 1;
+            }
+        }
+        _state = LINE_START;
+    }
+
+    /** Append C to the output, writing out the buffer if it is full. */
+    private void put(char c) {
+        if (!_outChars.hasRemaining()) {
+            flush(false);
+        }
+        _outChars.put(c);
+    }
+
+    /** Encode and write out all buffered output, finishing the encoding
+     *  iff END. */
+    private void flush(boolean end) {
+        try {
+            _outChars.flip();
+            CoderResult cr;
+            do {
+                cr = _encoder.encode(_outChars, _outBytes, end);
+                if (cr.isError()) {
+                    cr.throwException();
+                }
+                drain();
+            } while (cr.isOverflow());
+            if (end) {
+                while (_encoder.flush(_outBytes).isOverflow()) {
+                    drain();
+                }
+                drain();
+            }
+            _outChars.compact();
+        } catch (CharacterCodingException excp) {
+            throw error("output not encodable: %s", excp.getMessage());
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Write all encoded bytes to the output channel. */
+    private void drain() throws IOException {
+        _outBytes.flip();
+        while (_outBytes.hasRemaining()) {
+            _out.write(_outBytes);
+        }
+        _outBytes.clear();
+    }
+
+    /** Size in characters of the input and output buffers. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Longest settings line accepted. */
+    static final int MAX_SETTINGS = 1 << 16;
+
+    /** Number of characters in each output group. */
+    static final int GROUP = 5;
+
+    /** Input state at the beginning of a line. */
+    private static final int LINE_START = 0;
+
+    /** Input state within a settings line. */
+    private static final int SETTINGS = 1;
+
+    /** Input state within a message line. */
+    private static final int MESSAGE = 2;
+
+    /** Input state within a first line that is not a settings line. */
+    private static final int UNSET = 3;
+
+    /** The machine that converts messages. */
+    private final Machine _machine;
+
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Called with each settings line. */
+    private final Consumer<String> _setUp;
+
+    /** Decodes input bytes. */
+    private final CharsetDecoder _decoder;
+
+    /** Encodes output characters. */
+    private final CharsetEncoder _encoder;
+
+    /** Undecoded input. */
+    private final ByteBuffer _inBytes;
+
+    /** Decoded input. */
+    private final CharBuffer _inChars;
+
+    /** Output not yet encoded. */
+    private final CharBuffer _outChars;
+
+    /** Encoded output not yet written. */
+    private final ByteBuffer _outBytes;
+
+    /** The settings line being read. */
+    private final StringBuilder _settings = new StringBuilder();
+
+    /** Destination of output. */
+    private WritableByteChannel _out;
+
+    /** One of LINE_START, SETTINGS, MESSAGE, or UNSET. */
+    private int _state;
+
+    /** True once a settings line has been seen. */
+    private boolean _configured;
+
+    /** True once a first line that is not a settings line has been
+     *  seen. */
+    private boolean _unset;
+
+    /** The last settings line, if it has not yet taken effect, or
+     *  null. */
+    private String _pending;
+
+    /** Number of lines of blanks since the last character other than
+     *  white space. */
+    private long _trailing;
+
+    /** Number of characters converted on the current message line. */
+    private long _count;
+
+    /** True iff the current message line is empty. */
+    private boolean _empty;
+}
@@ -0,0 +1,96 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the StreamingProcessor class.
+ *  @author Lisa Sam Wang
+ */
+public class StreamingProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Inputs on which StreamingProcessor must agree with TextProcessor,
+     *  including their trailing empty and whitespace-only lines and
+     *  their errors. */
+    static final String[] INPUTS = {
+        "* B Beta III IV I AAAA\nHELLO WORLD\n \n",
+        "* B Beta III IV I AAAA\nHELLO\n\n  \n\n",
+        "* B Beta III IV I AAAA\n \nHELLO\n \nWORLD\n",
+        "* B Beta III IV I AAAA\nHELLO\n* B Beta I II III AXLE\n \n",
+        "* B Beta III IV I AAAA\n\n",
+        "* B Beta III IV I AAAA\nNO NEWLINE",
+        "HELLO\n* B Beta III IV I AAAA\nWORLD\n",
+        " \n\n  \n",
+    };
+
+    /** Return the output of TextProcessor on INPUT, followed by "|" and
+     *  the message of the error it reports, if any. */
+    static String text(String input) {
+        Machine mach = navalMachine();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String error = "";
+        try {
+            new TextProcessor(mach, s -> setUpNaval(mach, s))
+                .process(new Scanner(input), new PrintStream(out, true));
+        } catch (EnigmaException excp) {
+            error = "|" + excp.getMessage();
+        }
+        return out + error;
+    }
+
+    /** Return the output of a StreamingProcessor on INPUT, followed by
+     *  "|" and the message of the error it reports, if any. */
+    private String run(String input) throws IOException {
+        Machine mach = navalMachine();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayInputStream in = new ByteArrayInputStream(input.getBytes());
+        String error = "";
+        try {
+            new StreamingProcessor(mach, s -> setUpNaval(mach, s))
+                .process(Channels.newChannel(in), Channels.newChannel(out));
+        } catch (EnigmaException excp) {
+            error = "|" + excp.getMessage();
+        }
+        return out + error;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSameAsText() throws IOException {
+        for (String input : INPUTS) {
+            assertEquals(msg("checkSameAsText", "input %s", input),
+                         text(input), run(input));
+        }
+    }
+
+    @Test
+    public void checkTrailingBlankLine() throws IOException {
+        assertEquals("VJVVD AHBSZ\n\n",
+                     run("* B Beta III IV I AAAA\nHELLO WORLD\n \n"));
+    }
+
+    @Test
+    public void checkErrorMessages() throws IOException {
+        assertEquals("\n\n|You did not put a setting!", run(" \n\n  \n"));
+        assertEquals("|Invalid setting",
+                     run("HELLO\n* B Beta III IV I AAAA\nWORLD\n"));
+    }
+
+}
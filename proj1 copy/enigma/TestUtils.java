@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -39,6 +40,34 @@ class TestUtils {
                   + "(PW) (QZ) (SX) (UY)");
     }
 
+    /** Return a 5-slot, 3-pawl machine with the naval rotors B, Beta, I,
+     *  II, III, and IV. */
+    static Machine navalMachine() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        all.add(new FixedRotor("Beta",
+                               new Permutation(NAVALA.get("Beta"), UPPER)));
+        String[] moving = { "I", "II", "III", "IV" };
+        String[] notches = { "Q", "E", "VZ", "J" };
+        for (int k = 0; k < moving.length; k += 1) {
+            all.add(new MovingRotor(moving[k],
+                                    new Permutation(NAVALA.get(moving[k]),
+                                                    UPPER),
+                                    notches[k]));
+        }
+        return new Machine(UPPER, 5, 3, all);
+    }
+
+    /** Set up MACH, as made by navalMachine(), by SETTINGS, a settings
+     *  line without a plugboard. */
+    static void setUpNaval(Machine mach, String settings) {
+        String[] words = settings.split(" ");
+        mach.insertRotors(new String[] { words[1], words[2], words[3],
+                                         words[4], words[5] });
+        mach.setRotors(words[6]);
+        mach.setPlugboard(new Permutation("", UPPER));
+    }
+
     /** The mapping of the upper-case alphabet by NAVALA. */
     static final HashMap<String, String> NAVALA_MAP = new HashMap<>();
     static {
@@ -0,0 +1,85 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.Scanner;
+import java.util.function.Consumer;
+
+/** Applies a machine to settings lines and messages read a line at a
+ *  time, printing each converted line in groups of five.  Each message
+ *  line is converted on its own, in parallel chunks if it is long (see
+ *  Machine.convertParallel).
+ *  @author Lisa Sam Wang
+ */
+class TextProcessor {
+
+    /** A processor that converts messages with MACHINE, and that calls
+     *  SETUP with each settings line (a line starting with '*') to
+     *  configure MACHINE for the following messages. */
+    TextProcessor(Machine machine, Consumer<String> setUp) {
+        _machine = machine;
+        _setUp = setUp;
+    }
+
+    /** Read settings lines and messages from INPUT until end of input
+     *  and print the converted messages to OUTPUT. */
+    void process(Scanner input, PrintStream output) {
+        String nextl = input.nextLine();
+        while (input.hasNext()) {
+            String sett = nextl;
+            if (!sett.contains("*")) {
+                throw new EnigmaException("Invalid setting");
+            }
+            if (sett.startsWith("*")) {
+                _setUp.accept(sett);
+            }
+            nextl = (input.nextLine());
+            while (nextl.isEmpty()) {
+                nextl = (input.nextLine());
+                output.println();
+            }
+            while (!(nextl.contains("*"))) {
+                String result = _machine.convertParallel(nextl);
+                if (nextl.isEmpty()) {
+                    output.println();
+                } else {
+                    printMessageLine(output, result);
+                }
+                if (!input.hasNext()) {
+                    nextl = "*";
+                } else {
+                    nextl = (input.nextLine());
+                }
+            }
+        }
+        while (input.hasNextLine()) {
+            output.println();
+            input.nextLine();
+        }
+        if (!input.hasNextLine()) {
+            if (!nextl.startsWith("*")) {
+                throw new EnigmaException("You did not put a setting!");
+            }
+        }
+    }
+
+    /** Print MSG to OUTPUT in groups of five (except that the last group
+     *  may have fewer letters). */
+    static void printMessageLine(PrintStream output, String msg) {
+        for (int i = 0; i < msg.length(); i += GROUP) {
+            if (msg.length() - i <= GROUP) {
+                output.println(msg.substring(i));
+            } else {
+                output.print(msg.substring(i, i + GROUP) + " ");
+            }
+        }
+    }
+
+    /** Number of characters in each group of output. */
+    static final int GROUP = 5;
+
+    /** The machine that converts messages. */
+    private final Machine _machine;
+
+    /** Configures _machine by a settings line. */
+    private final Consumer<String> _setUp;
+}
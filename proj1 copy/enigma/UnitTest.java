@@ -10,7 +10,19 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class, MovingRotorTest.class);
+        textui.runClasses(PermutationTest.class, MovingRotorTest.class,
+                          AlphabetTest.class, MachineTest.class,
+                          KeySearchTest.class, BombeTest.class,
+                          HillClimberTest.class,
+                          SearchCoordinatorTest.class,
+                          LaneBatchTest.class, RotorCatalogTest.class,
+                          CompiledConfigTest.class,
+                          MessageIndexTest.class,
+                          ByteProcessorTest.class,
+                          BatchProcessorTest.class,
+                          StreamingProcessorTest.class,
+                          PipelinedProcessorTest.class,
+                          EnigmaServerTest.class);
     }
 
 }